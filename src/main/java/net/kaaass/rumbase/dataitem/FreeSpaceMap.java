@@ -0,0 +1,151 @@
+package net.kaaass.rumbase.dataitem;
+
+import net.kaaass.rumbase.dataitem.exception.PageCorruptedException;
+import net.kaaass.rumbase.page.PageManager;
+import net.kaaass.rumbase.page.PageStorage;
+import net.kaaass.rumbase.page.exception.FileException;
+import net.kaaass.rumbase.page.exception.PageException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 空闲空间表
+ * <p>
+ * 记录数据文件中每个页的剩余空间，保存在数据文件旁的“文件名.fsm”文件中。每个数据页占1字节，
+ * 值为剩余空间除以页大小的1/256，向下取整，因此表中记录的空间不会多于页内实际的剩余空间。
+ * 第p个映射页记录数据页p * 页大小至(p + 1) * 页大小 - 1。
+ * </p>
+ * <p>
+ * 空闲空间表只是插入时选页的提示，写回不与数据页同步。选中的页在加锁后仍需检查实际的剩余空间，
+ * 不符时以实际值更正表项。内存中另记录每个映射页中最大值的上界，查找时跳过没有足够空间的映射页。
+ * </p>
+ *
+ * @author kaito
+ */
+class FreeSpaceMap {
+
+    FreeSpaceMap(PageStorage storage, int pageSize) {
+        this.storage = storage;
+        this.entryNum = storage.getPageSize();
+        this.step = Math.max(1, pageSize / CATEGORY_NUM);
+    }
+
+    /**
+     * 打开数据文件对应的空闲空间表，不存在时新建
+     *
+     * @param fileName 数据文件名
+     * @param pageSize 数据文件的页大小
+     * @return 空闲空间表
+     */
+    static FreeSpaceMap ofFile(String fileName, int pageSize) throws FileException {
+        return new FreeSpaceMap(PageManager.fromFile(fileName + SUFFIX), pageSize);
+    }
+
+    /**
+     * 记录页的剩余空间
+     *
+     * @param pageId    数据页号
+     * @param leftSpace 剩余空间大小
+     */
+    void update(int pageId, int leftSpace) {
+        byte category = (byte) Math.max(0, Math.min(CATEGORY_NUM - 1, leftSpace / this.step));
+        var page = this.storage.get(pageId / this.entryNum);
+        try {
+            int offset = pageId % this.entryNum;
+            if (page.slice(offset, 1).get(0) != category) {
+                page.patchData(offset, new byte[]{category});
+            }
+            this.maxCategory.computeIfPresent(pageId / this.entryNum, (k, v) -> Math.max(v, category & 0xFF));
+        } catch (PageException e) {
+            throw new PageCorruptedException(1, e);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * 在[from, until)中查找剩余空间不少于need的页。从start开始向后查找，到达until后从from继续
+     *
+     * @param need  需要的空间大小
+     * @param from  查找范围的起始页号
+     * @param until 查找范围的结束页号（不含）
+     * @param start 开始查找的页号
+     * @return 数据页号，没有时返回-1
+     */
+    int search(int need, int from, int until, int start) {
+        if (from >= until) {
+            return -1;
+        }
+        // 向上取整，保证找到的页的剩余空间足够
+        int category = (need + this.step - 1) / this.step;
+        if (category >= CATEGORY_NUM) {
+            return -1;
+        }
+        if (start < from || start >= until) {
+            start = from;
+        }
+        int found = scan(category, start, until);
+        if (found < 0 && start > from) {
+            found = scan(category, from, start);
+        }
+        return found;
+    }
+
+    /**
+     * 顺序扫描[from, until)，每个映射页只取一次。扫描过整个映射页后记录其中的最大值
+     */
+    private int scan(int category, int from, int until) {
+        int pageId = from;
+        while (pageId < until) {
+            int mapPage = pageId / this.entryNum;
+            int end = (int) Math.min(until, (mapPage + 1L) * this.entryNum);
+            if (this.maxCategory.getOrDefault(mapPage, CATEGORY_NUM) < category) {
+                pageId = end;
+                continue;
+            }
+            var page = this.storage.get(mapPage);
+            try {
+                var bytes = page.slice(pageId % this.entryNum, end - pageId);
+                int max = 0;
+                for (int i = 0; i < end - pageId; i++) {
+                    int c = bytes.get(i) & 0xFF;
+                    if (c >= category) {
+                        return pageId + i;
+                    }
+                    max = Math.max(max, c);
+                }
+                if (end - pageId == this.entryNum) {
+                    this.maxCategory.put(mapPage, max);
+                }
+            } finally {
+                page.unpin();
+            }
+            pageId = end;
+        }
+        return -1;
+    }
+
+    /**
+     * 空闲空间表文件的后缀
+     */
+    static final String SUFFIX = ".fsm";
+    /**
+     * 剩余空间的分级数
+     */
+    private static final int CATEGORY_NUM = 256;
+
+    private final PageStorage storage;
+    /**
+     * 每个映射页记录的数据页数
+     */
+    private final int entryNum;
+    /**
+     * 每级对应的字节数
+     */
+    private final int step;
+    /**
+     * 映射页号到其中最大值的上界，仅为提示
+     */
+    private final Map<Integer, Integer> maxCategory = new ConcurrentHashMap<>();
+}
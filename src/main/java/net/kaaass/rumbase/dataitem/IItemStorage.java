@@ -4,6 +4,8 @@ import net.kaaass.rumbase.dataitem.exception.PageCorruptedException;
 import net.kaaass.rumbase.dataitem.exception.UUIDException;
 import net.kaaass.rumbase.transaction.TransactionContext;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -20,6 +22,14 @@ public interface IItemStorage {
      */
     long insertItem(TransactionContext txContext, byte[] item);
 
+    /**
+     * 批量插入数据项，同一页中的数据项一次写入
+     *
+     * @param items 数据项列表
+     * @return 按顺序返回各数据项的UUID
+     */
+    List<Long> insertItems(TransactionContext txContext, List<byte[]> items);
+
     /**
      * 插入一个有UUID的数据项，唯一使用的地方是日志恢复时使用
      * <p>
@@ -41,6 +51,18 @@ public interface IItemStorage {
      */
     byte[] queryItemByUuid(long uuid) throws UUIDException;
 
+    /**
+     * 通过UUID以流的方式读取数据项，大数据项按页读出，不整体复制到一个数组中。
+     * 读取过程中数据项被并发修改或删除时，读取流抛出PageCorruptedException
+     *
+     * @param uuid 编号
+     * @return 数据项内容的输入流
+     * @throws UUIDException UUID找不到的异常
+     */
+    default InputStream queryItemStreamByUuid(long uuid) throws UUIDException {
+        return new ByteArrayInputStream(queryItemByUuid(uuid));
+    }
+
 
     /**
      * 列出页中所有的记录
@@ -50,6 +72,13 @@ public interface IItemStorage {
      */
     List<byte[]> listItemByPageId(int pageId);
 
+    /**
+     * 按页号顺序遍历所有数据项，每次只读入并固定一页
+     *
+     * @return 数据项游标
+     */
+    ItemCursor scan();
+
     /**
      * 根据UUID更新数据项
      *
@@ -75,6 +104,10 @@ public interface IItemStorage {
 
     /**
      * 清理多余的数据项，空间清理时使用。
+     * <p>
+     * 被删除的数据项所占的空间立即回收，其余数据项的UUID不变。不存在或已被删除的UUID被忽略，
+     * 之后查询被删除的UUID会抛出UUIDException。
+     * </p>
      *
      * @param uuids 数据项UUID的编号列表
      */
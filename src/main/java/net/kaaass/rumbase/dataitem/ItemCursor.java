@@ -0,0 +1,47 @@
+package net.kaaass.rumbase.dataitem;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 数据项游标，按页号顺序遍历数据项存储中的所有数据项
+ * <p>
+ * 使用方式：
+ * <pre>
+ *     try (var cursor = itemStorage.scan()) {
+ *         while (cursor.next()) {
+ *             process(cursor.getUuid(), cursor.getPayload());
+ *         }
+ *     }
+ * </pre>
+ *
+ * @author kaito
+ */
+public interface ItemCursor extends AutoCloseable {
+
+    /**
+     * 移到下一个数据项
+     *
+     * @return 没有更多数据项时返回false
+     */
+    boolean next();
+
+    /**
+     * 当前数据项的UUID
+     *
+     * @return UUID
+     */
+    long getUuid();
+
+    /**
+     * 当前数据项内容的只读视图，游标移动后仍然有效
+     *
+     * @return 数据项内容
+     */
+    ByteBuffer getPayload();
+
+    /**
+     * 结束遍历
+     */
+    @Override
+    void close();
+}
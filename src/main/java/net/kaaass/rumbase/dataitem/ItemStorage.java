@@ -1,8 +1,5 @@
 package net.kaaass.rumbase.dataitem;
 
-import com.igormaznitsa.jbbp.JBBPParser;
-import com.igormaznitsa.jbbp.io.JBBPOut;
-import com.igormaznitsa.jbbp.mapper.Bin;
 import lombok.extern.slf4j.Slf4j;
 import net.kaaass.rumbase.dataitem.exception.PageCorruptedException;
 import net.kaaass.rumbase.dataitem.exception.UUIDException;
@@ -14,11 +11,16 @@ import net.kaaass.rumbase.page.exception.PageException;
 import net.kaaass.rumbase.recovery.IRecoveryStorage;
 import net.kaaass.rumbase.transaction.TransactionContext;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
-import java.util.Random;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * 数据项管理器的具体实现
@@ -30,10 +32,23 @@ import java.util.Random;
  * 同时每个页都有相应的页头，页头格式为：
  * |页头标志位 2 3 4 5(共4字节)|lsn来记录日志相关内容(8字节)|页剩余空间大小(4字节)|页内数据项个数n(4字节)|每个数据项标志(n*8字节)|
  * <p>
- * 数据项标志为 |uuid后面的随机数(4字节)|在页内偏移offset(4字节)|
+ * 数据项标志为 |uuid的低32位，即数据项编号(4字节)|在页内偏移offset(4字节)|
+ * <p>
+ * 数据项编号的最高位为1时，其低16位为数据项标志的下标，第16至30位为代数，见SlottedPage。
+ * 旧格式的编号为非负的随机数，查找时仍按顺序比较页内的所有数据项标志。
  * <p>
  * 每个数据项的内容为|标志位，表示有没有拉链等特殊情况(1字节)|数据长度m(4字节)|数据内容(m字节)|
- * TODO : |(若有拉链的话，则记录下一个uuid位置)8字节|
+ * <p>
+ * 不小于MAX_RECORD_SIZE的数据项存放在溢出页链中，见OverflowChain。此时标志位为OVERFLOW_DATA，
+ * 数据内容为|链首溢出页号(4字节)|数据总长度(4字节)|版本(4字节)|
+ * <p>
+ * 更新时数据项的长度可以改变。页内放不下时，数据项移到之后的页中，标志位为MOVED_NORMAL_DATA或
+ * MOVED_OVERFLOW_DATA，原位置留下标志位为FORWARD_DATA的转发项，数据内容为|移动后的UUID(8字节)|，
+ * 因此数据项的UUID不随更新改变。转发最多一次，移动后的数据项再次移动时直接修改原位置的转发项。
+ * <p>
+ * 页内布局的读写由SlottedPage按固定偏移直接完成。
+ * <p>
+ * 删除数据项时保留其数据项标志并整理页面，其余数据项的uuid不变，空出的空间可被之后的插入使用。
  * </p>
  *
  * @author kaito
@@ -43,9 +58,13 @@ public class ItemStorage implements IItemStorage {
 
     private final String fileName;
     /**
-     * 当前第一个空闲的页，用于插入时作为起始页来进行操作。
+     * 当前已使用的最大页号，分配新页时加一并写入表头，只增不减
+     */
+    private final AtomicInteger tempFreePage;
+    /**
+     * 各插入分片当前使用的页。线程按编号选择分片，不同分片的插入落在不同的页上
      */
-    private int tempFreePage;
+    private final AtomicIntegerArray insertPages;
     /**
      * 表信息头对应的UUID
      */
@@ -58,13 +77,37 @@ public class ItemStorage implements IItemStorage {
      * 维护一个日志管理器
      */
     private IRecoveryStorage recoveryStorage;
+    /**
+     * 按页扫描时已提交预读的页号上界（不含），仅作提示，无需同步
+     */
+    private volatile int readAheadUntil = 0;
+    /**
+     * 页的大小，页内布局由此推出
+     */
+    private final int pageSize;
+    /**
+     * 每个页保留的大小，为页大小的十分之一
+     */
+    private final int minLeftSpace;
+    /**
+     * 记录各页剩余空间的空闲空间表，插入时据此选页
+     */
+    private final FreeSpaceMap freeSpaceMap;
 
 
-    public ItemStorage(String fileName, int tempFreePage, long headerUuid, PageStorage pageStorage) {
+    ItemStorage(String fileName, int tempFreePage, long headerUuid, PageStorage pageStorage, FreeSpaceMap freeSpaceMap) {
         this.fileName = fileName;
-        this.tempFreePage = tempFreePage;
+        this.tempFreePage = new AtomicInteger(tempFreePage);
+        this.insertPages = new AtomicIntegerArray(INSERT_PAGE_NUM);
+        for (int i = 0; i < INSERT_PAGE_NUM; i++) {
+            // 开始时各分片共用最后一页，写满后再各自分配新页
+            this.insertPages.set(i, tempFreePage);
+        }
         this.headerUuid = headerUuid;
         this.pageStorage = pageStorage;
+        this.pageSize = pageStorage.getPageSize();
+        this.minLeftSpace = this.pageSize / 10;
+        this.freeSpaceMap = freeSpaceMap;
     }
 
     /**
@@ -78,14 +121,7 @@ public class ItemStorage implements IItemStorage {
      * @return 是否是表的第一页
      */
     private static boolean checkTableHeader(Page header) {
-        var data = header.getData();
-        byte[] flag = new byte[4];
-        try {
-            data.read(flag);
-        } catch (IOException e) {
-            throw new PageCorruptedException(1, e);
-        }
-        return flag[0] == 1 && flag[1] == 2 && flag[2] == 3 && flag[3] == 4;
+        return header.getInt(0) == TABLE_HEADER_FLAG;
     }
 
     /**
@@ -96,27 +132,19 @@ public class ItemStorage implements IItemStorage {
      */
     public static IItemStorage ofFile(String fileName) throws FileException, PageException {
         var pageStorage = PageManager.fromFile(fileName);
+        var freeSpaceMap = FreeSpaceMap.ofFile(fileName, pageStorage.getPageSize());
         var header = pageStorage.get(0);
-        header.pin();
         try {
             if (checkTableHeader(header)) {
                 // 如果表头标志存在，就解析对应表头信息
                 var h = parseHeader(header);
-                return new ItemStorage(fileName, h.tempFreePage, h.headerUuid, pageStorage);
+                return new ItemStorage(fileName, h.tempFreePage, h.headerUuid, pageStorage, freeSpaceMap);
             } else {
                 // 若表头标志不存在，就初始化对应的表信息。
                 // 只初始化headerFlag和tempFreePage，表头信息位置统一由setMetadata来实现
-                byte[] bytes;
-                try {
-                    bytes = JBBPOut.BeginBin().
-                            Byte(1, 2, 3, 4).
-                            Int(1).
-                            End().toByteArray();
-                } catch (IOException e) {
-                    throw new PageCorruptedException(1, e);
-                }
-                header.patchData(0, bytes);
-                return new ItemStorage(fileName, 1, 0, pageStorage);
+                header.putInt(0, TABLE_HEADER_FLAG);
+                header.putInt(4, 1);
+                return new ItemStorage(fileName, 1, 0, pageStorage, freeSpaceMap);
             }
         } finally {
             header.unpin();
@@ -147,19 +175,14 @@ public class ItemStorage implements IItemStorage {
      * 根据uuid获取page
      */
     private Page getPage(long uuid) {
-        var pageId = uuid >> 32;
-        Page page = pageStorage.get(pageId);
-        page.pin();
-        return page;
+        return pageStorage.get(uuid >> 32);
     }
 
     /**
      * 根据pageId获取Page
      */
     private Page getPage(int pageId) {
-        Page page = pageStorage.get(pageId);
-        page.pin();
-        return page;
+        return pageStorage.get(pageId);
     }
 
     /**
@@ -177,368 +200,784 @@ public class ItemStorage implements IItemStorage {
      * @return 解析得到的表头对象
      */
     private static TableHeader parseHeader(Page page) throws PageCorruptedException {
-        try {
-            return JBBPParser.prepare("int headerFlag;int tempFreePage;byte hasHeaderInfo;long headerUuid;").
-                    parse(page.getData()).mapTo(new TableHeader());
-        } catch (IOException e) {
-            throw new PageCorruptedException(1, e);
-        }
+        var header = new TableHeader();
+        header.headerFlag = page.getInt(0);
+        header.tempFreePage = page.getInt(4);
+        header.hasHeaderInfo = page.slice(HEADER_OFFSET, 1).get(0);
+        header.headerUuid = page.getLong(HEADER_OFFSET + 1);
+        return header;
     }
 
     /**
-     * 通过偏移量解析得到数据
+     * 分配一个新页，并修改表头中的页号
      *
-     * @param page 页
-     * @param item 一个数据项记录
-     * @return 解析得到的数据
+     * @return 新页的页号
      */
-    private static byte[] parseData(Page page, Item item) throws PageCorruptedException {
-        int offset = item.offset;
-        var data = page.getData();
-        try {
-            data.skip(offset);
-            var content = JBBPParser.prepare("byte type;int size;byte[size] data;").parse(data).mapTo(new ItemContent());
-            if (content.type != NORMAL_DATA) {
-                throw new PageCorruptedException(2);
-            }
-            return content.data;
-        } catch (IOException e) {
-            throw new PageCorruptedException(2, e);
+    private int allocatePage() {
+        int pageId = this.tempFreePage.incrementAndGet();
+        writeTempFreePage();
+        return pageId;
+    }
+
+    /**
+     * 将已使用的最大页号提高到至少pageId
+     */
+    private void raiseTempFreePage(int pageId) {
+        int old = this.tempFreePage.getAndAccumulate(pageId, Math::max);
+        if (old < pageId) {
+            writeTempFreePage();
         }
     }
 
     /**
-     * 检查一个页头标志位是否存在，表示其是否已经被初始化。若初始化则标志位为2345
-     *
-     * @param page 页
-     * @return 该页是否已经被初始化
+     * 将tempFreePage写入表头。在表头页的锁内读取最新值，先后的写入不会使表头中的值变小
      */
-    private boolean checkPageHeader(Page page) {
-        byte[] pageFlag = new byte[4];
+    private void writeTempFreePage() {
+        var page = pageStorage.get(0);
+        page.latchExclusive();
         try {
-            var n = page.getData().read(pageFlag);
-        } catch (IOException e) {
+            page.putInt(4, this.tempFreePage.get());
+        } catch (Exception e) {
             throw new PageCorruptedException(1, e);
+        } finally {
+            page.unlatchExclusive();
+            page.unpin();
         }
-        return pageFlag[0] == 2 && pageFlag[1] == 3 && pageFlag[2] == 4 && pageFlag[3] == 5;
     }
 
-    private Optional<PageHeader> getPageHeader(Page page) {
-        try {
-            if (checkPageHeader(page)) {
-                // 如果页头信息正确，就解析得到页头信息的对象。
-                var data = page.getData();
-                var pageHeader = JBBPParser.prepare("int pageFlag;long lsn;int leftSpace;int recordNumber;" +
-                        "item [recordNumber]{int uuid;int offset;}").parse(data);
-                var p = pageHeader.mapTo(new PageHeader());
-                return Optional.of(p);
-            }
-        } catch (IOException e) {
-            throw new PageCorruptedException(1, e);
+    @Override
+    public long insertItem(TransactionContext txContext, byte[] item) {
+        return insertItems(txContext, List.of(item)).get(0);
+    }
+
+    @Override
+    public List<Long> insertItems(TransactionContext txContext, List<byte[]> items) {
+        // 大数据项先写入溢出页链，数据页中只存放指向链首的数据项
+        List<byte[]> stored = new ArrayList<>(items.size());
+        var types = new byte[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            var item = items.get(i);
+            boolean overflow = item.length >= MAX_RECORD_SIZE;
+            types[i] = overflow ? OVERFLOW_DATA : NORMAL_DATA;
+            stored.add(overflow ? writeOverflow(item, new ArrayList<>()) : item);
+        }
+        List<Long> uuids = new ArrayList<>(items.size());
+        int shard = (int) Math.floorMod(Thread.currentThread().getId(), (long) INSERT_PAGE_NUM);
+        while (uuids.size() < items.size()) {
+            // 先尝试本分片的页，只锁住该页
+            int current = this.insertPages.get(shard);
+            if (tryInsert(current, stored, types, uuids) > 0) {
+                continue;
+            }
+            // 本分片的页空间不足时，在空闲空间表中找之前的页，仍没有时分配新页
+            int pageId = this.freeSpaceMap.search(needOf(stored.get(uuids.size())), 1,
+                    this.tempFreePage.get() + 1, searchStart());
+            if (pageId < 0) {
+                pageId = allocatePage();
+            }
+            tryInsert(pageId, stored, types, uuids);
+            this.insertPages.compareAndSet(shard, current, pageId);
         }
-        // 否则返回空，交由上层处理。
-        return Optional.empty();
+        return uuids;
     }
 
-    private PageHeader initPage(Page page) {
-        final byte[] bytes;
-        try {
-            bytes = JBBPOut.BeginBin().
-                    Byte(2, 3, 4, 5). // 页头标志位
-                    Long(0).       // 日志记录位置，以后若有日志记录点则使用
-                    Int(4072).         // 剩余空间大小
-                    Int(0).        // 记录数目
-                    End().toByteArray();
-            page.patchData(0, bytes);
-        } catch (IOException | PageException e) {
-            throw new PageCorruptedException(1, e);
+    /**
+     * 插入数据页中的数据需要页内至少有的剩余空间
+     */
+    private int needOf(byte[] stored) {
+        return stored.length + this.minLeftSpace + 1;
+    }
+
+    /**
+     * 分配一个溢出页，优先使用已回收的页
+     */
+    private int allocateOverflowPage() {
+        long reused = this.pageStorage.reusePage();
+        int pageId = reused > 0 ? (int) reused : allocatePage();
+        // 溢出页不能作为插入数据项的页
+        this.freeSpaceMap.update(pageId, 0);
+        return pageId;
+    }
+
+    /**
+     * 将大数据项写入溢出页链。pageIds中已有的页会被复用，不足时分配新页，多余的页被回收
+     *
+     * @param item    数据项
+     * @param pageIds 可复用的溢出页
+     * @return 数据页中指向链首的数据内容
+     */
+    private byte[] writeOverflow(byte[] item, List<Integer> pageIds) {
+        int count = OverflowChain.pageCount(item.length, this.pageSize);
+        while (pageIds.size() < count) {
+            pageIds.add(allocateOverflowPage());
+        }
+        while (pageIds.size() > count) {
+            this.pageStorage.freePage(pageIds.remove(pageIds.size() - 1));
         }
-        return new PageHeader(0, 0, 4072, 0);
+        return OverflowChain.write(this.pageStorage, pageIds, item);
     }
 
     /**
-     * 修改当前第一个可用页
+     * 读取偏移处的数据项，溢出的数据项从溢出页链中读出
      */
-    private void addTempFreePage() {
-        this.tempFreePage += 1;
-        var page = pageStorage.get(0);
-        page.pin();
-        byte[] tempFreePage;
+    private byte[] readItem(Page page, int offset) {
+        var stored = readStored(page, offset);
+        if (isOverflow(stored.type)) {
+            return OverflowChain.read(this.pageStorage, stored.data);
+        }
+        return stored.data;
+    }
+
+    /**
+     * 读取偏移处数据页中存放的内容，转发项读取移动后的数据项。调用方持有page的锁
+     */
+    private StoredItem readStored(Page page, int offset) {
+        var stored = new StoredItem(SlottedPage.dataType(page, offset), SlottedPage.readData(page, offset));
+        if (stored.type != FORWARD_DATA) {
+            return stored;
+        }
+        long target = ByteBuffer.wrap(stored.data).getLong();
+        // 移动后的数据项总在更后的页中，按页号从小到大加锁
+        var moved = getPage(target);
+        moved.latchShared();
         try {
-            tempFreePage = JBBPOut.BeginBin().
-                    Int(this.tempFreePage)
-                    .End().toByteArray();
-            page.patchData(4, tempFreePage);
-        } catch (Exception e) {
-            throw new PageCorruptedException(1, e);
+            int slot = SlottedPage.isInitialized(moved) ? SlottedPage.findSlot(moved, getRndByUuid(target)) : -1;
+            if (slot < 0) {
+                throw new PageCorruptedException(2);
+            }
+            int movedOffset = SlottedPage.slotOffset(moved, slot);
+            stored = new StoredItem(SlottedPage.dataType(moved, movedOffset), SlottedPage.readData(moved, movedOffset));
+            if (!isMoved(stored.type)) {
+                throw new PageCorruptedException(2);
+            }
+            return stored;
         } finally {
-            page.unpin();
+            moved.unlatchShared();
+            releasePage(moved);
         }
     }
 
-    @Override
-    public synchronized long insertItem(TransactionContext txContext, byte[] item) {
-        var page = getPage(this.tempFreePage);
+    /**
+     * 数据内容是否指向溢出页链
+     */
+    private static boolean isOverflow(byte type) {
+        return type == OVERFLOW_DATA || type == MOVED_OVERFLOW_DATA;
+    }
+
+    /**
+     * 是否为从其他页移动而来的数据项
+     */
+    private static boolean isMoved(byte type) {
+        return type == MOVED_NORMAL_DATA || type == MOVED_OVERFLOW_DATA;
+    }
+
+    /**
+     * 空闲空间表中开始查找的页号，不同线程从不同的位置开始，使并发的插入分散到不同的页
+     */
+    private int searchStart() {
+        int range = this.tempFreePage.get();
+        if (range <= 0) {
+            return 1;
+        }
+        return 1 + (int) Math.floorMod(Thread.currentThread().getId() * 0x9E3779B9L, (long) range);
+    }
+
+    /**
+     * 从items中第uuids.size()个起，在页中插入尽可能多的数据项，并更新空闲空间表
+     * <p>
+     * 同一页中的数据项在一次加锁内插入，页头中的剩余空间与数据项个数只写一次。
+     * </p>
+     *
+     * @return 插入的个数，页内剩余空间不足时返回0
+     */
+    private int tryInsert(int pageId, List<byte[]> items, byte[] types, List<Long> uuids) {
+        var page = getPage(pageId);
+        page.latchExclusive();
         try {
-            var pageHeaderOp = getPageHeader(page);
-            if (pageHeaderOp.isEmpty()) {
+            if (page.getInt(0) == OverflowChain.OVERFLOW_PAGE_FLAG) {
+                // 空闲空间表中的旧记录指向了溢出页
+                this.freeSpaceMap.update(pageId, 0);
+                return 0;
+            }
+            if (!SlottedPage.isInitialized(page)) {
                 // 如果获取的页没有页头信息，则进行初始化。
-                pageHeaderOp = Optional.of(initPage(page));
+                SlottedPage.init(page, this.pageSize);
             }
-            var pageHeader = pageHeaderOp.get();
-            if (pageHeader.leftSpace - Math.min(item.length, MAX_RECORD_SIZE) <= MIN_LEFT_SPACE) {
-                // 如果剩余空间过小的话，就切换到下一个页进行，同时修改表头信息.并且，若数据过大则使用拉链，所以取512和数据大小较小的
-                addTempFreePage();
-                return insertItem(txContext, item);
-            } else {
-                // 剩余空间足够，则插入
-                int rnd = Math.abs(new Random().nextInt());
-                long s = this.tempFreePage;
-                long uuid = ((s << 32) + (long) (rnd));
-                // 保证uuid不重复
-                while (checkUuidExist(uuid)) {
-                    rnd = Math.abs(new Random().nextInt());
-                    uuid = ((s << 32) + (long) (rnd));
+            int leftSpace = SlottedPage.leftSpace(page);
+            int recordNumber = SlottedPage.recordNumber(page);
+            int offset = SlottedPage.lowestOffset(page, this.pageSize);
+            int reusable = SlottedPage.reusableSlot(page, 0);
+            int count = 0;
+            while (uuids.size() < items.size()) {
+                var item = items.get(uuids.size());
+                if (leftSpace < needOf(item)) {
+                    break;
                 }
-                insertToPage(page, pageHeader, txContext, item, rnd);
-                return uuid;
+                // 剩余空间足够，则插入。优先复用被删除的数据项标志并增加代数，数据项编号在页内不会重复
+                int slot;
+                int rnd;
+                if (reusable >= 0) {
+                    slot = reusable;
+                    rnd = SlottedPage.slotAddressedId(slot, SlottedPage.nextGeneration(SlottedPage.slotId(page, slot)));
+                    reusable = SlottedPage.reusableSlot(page, slot + 1);
+                } else {
+                    slot = recordNumber;
+                    rnd = SlottedPage.slotAddressedId(slot, SlottedPage.FIRST_GENERATION);
+                    leftSpace -= ITEM_SIZE;
+                    recordNumber++;
+                }
+                offset -= item.length + DATA_EXTRA_SIZE;
+                SlottedPage.writeSlot(page, slot, rnd, offset);
+                SlottedPage.writeData(page, offset, types[uuids.size()], item);
+                leftSpace -= item.length + DATA_EXTRA_SIZE;
+                uuids.add(((long) pageId << 32) | (rnd & 0xFFFFFFFFL));
+                count++;
+            }
+            if (count > 0) {
+                SlottedPage.writeCounts(page, leftSpace, recordNumber);
             }
+            // 空闲空间表只是提示，以页内的实际值为准
+            this.freeSpaceMap.update(pageId, leftSpace);
+            return count;
         } catch (PageCorruptedException e) {
             throw e;
         } catch (Exception e) {
             throw new PageCorruptedException(3);
         } finally {
+            page.unlatchExclusive();
             releasePage(page);
         }
     }
 
     /**
-     * 将数据插入到页内对应位置，并修改页头信息
+     * 将数据插入到页内第slot个数据项标志，并修改页头信息。
+     * slot超出页内数据项个数时，中间的数据项标志写为占位
      */
-    private void insertToPage(Page page, PageHeader pageHeader, TransactionContext txContext, byte[] item, int rnd) {
-        if (item.length < MAX_RECORD_SIZE) {
-            int offset = 0;
-            if (pageHeader.recordNumber == 0) {
-                // 如果页没有元素的话
-                offset = 4095 - item.length - DATA_EXTRA_SIZE;
-            } else {
-                // 如果页内有插入的数据，则读取其offset并推算自己的offset
-                offset = pageHeader.item[pageHeader.recordNumber - 1].offset - item.length - DATA_EXTRA_SIZE;
-            }
-            try {
-                //修改数据项头信息
-                var i = JBBPOut.BeginBin().
-                        Int(rnd).
-                        Int(offset).
-                        End().toByteArray();
-                page.patchData(ITEM_OFFSET + pageHeader.recordNumber * ITEM_SIZE, i);
-                //修改数据信息
-                var data = JBBPOut.BeginBin().
-                        Byte(NORMAL_DATA).
-                        Int(item.length).
-                        Byte(item).End().toByteArray();
-                page.patchData(offset, data);
-            } catch (IOException | PageException e) {
-                throw new PageCorruptedException(2, e);
-            }
-            try {
-                //修改页头信息
-                var headerInfo = JBBPOut.BeginBin().
-                        Int(pageHeader.leftSpace - item.length - DATA_EXTRA_SIZE - ITEM_SIZE).
-                        Int(pageHeader.recordNumber + 1).
-                        End().toByteArray();
-                page.patchData(LEFT_SPACE_OFFSET, headerInfo);
-            } catch (IOException | PageException e) {
-                throw new PageCorruptedException(1, e);
-            }
+    private void insertToPage(Page page, TransactionContext txContext, byte[] item, int rnd, int slot) {
+        int recordNumber = SlottedPage.recordNumber(page);
+        int added = Math.max(slot + 1 - recordNumber, 0);
+        int storedSize = item.length >= MAX_RECORD_SIZE ? OVERFLOW_STUB_SIZE : item.length;
+        int leftSpace = SlottedPage.leftSpace(page) - storedSize - DATA_EXTRA_SIZE - added * ITEM_SIZE;
+        if (leftSpace < 0) {
+            throw new PageCorruptedException(4);
         }
-    }
-
-    @Override
-    public synchronized void insertItemWithUuid(TransactionContext txContext, byte[] item, long uuid) {
-        if (!checkUuidExist(uuid)) {
-            // 若不存在，则要恢复
-            var page = getPage(uuid);
-            try {
-                var pageHeaderOp = getPageHeader(page);
-                if (pageHeaderOp.isEmpty()) {
-                    // 如果获取的页没有页头信息，则进行初始化。
-                    pageHeaderOp = Optional.of(initPage(page));
-                }
-                int rnd = getRndByUuid(uuid);
-                insertToPage(page, pageHeaderOp.get(), txContext, item, rnd);
-            } catch (Exception e) {
-                throw new PageCorruptedException(3);
-            } finally {
-                releasePage(page);
-            }
+        byte type = NORMAL_DATA;
+        if (item.length >= MAX_RECORD_SIZE) {
+            type = OVERFLOW_DATA;
+            item = writeOverflow(item, new ArrayList<>());
         }
-        // 若存在则不需要恢复，直接返回
+        for (int i = recordNumber; i < slot; i++) {
+            SlottedPage.writeSlot(page, i, SlottedPage.placeholderId(i), SlottedPage.REMOVED_OFFSET);
+        }
+        // 紧接在偏移最小的数据项之前
+        int offset = SlottedPage.lowestOffset(page, this.pageSize) - item.length - DATA_EXTRA_SIZE;
+        //修改数据项头信息
+        SlottedPage.writeSlot(page, slot, rnd, offset);
+        //修改数据信息
+        SlottedPage.writeData(page, offset, type, item);
+        //修改页头信息
+        SlottedPage.writeCounts(page, leftSpace, recordNumber + added);
     }
 
     /**
-     * 检查uuid是否存在,若Uuid的页号超过当前可用页，则直接返回False
+     * 恢复的数据项应放入的下标。旧格式的编号追加在末尾，记录下标的编号放在其记录的下标处
      *
-     * @param uuid
-     * @return
+     * @return 下标，数据项已存在或已被删除时返回-1
+     * @throws PageCorruptedException 该下标已被其他数据项占用
      */
-    private boolean checkUuidExist(long uuid) {
-        var pageId = uuid >> 32;
-        if (pageId > this.tempFreePage || pageId < 0) {
-            return false;
+    private static int recoverySlot(Page page, int rnd) {
+        if (SlottedPage.findSlot(page, rnd) >= 0) {
+            return -1;
+        }
+        int slot = SlottedPage.slotOf(rnd);
+        if (slot < 0) {
+            return SlottedPage.wasRemoved(page, rnd) ? -1 : SlottedPage.recordNumber(page);
         }
+        if (slot >= SlottedPage.recordNumber(page) || SlottedPage.isPlaceholder(page, slot)) {
+            return slot;
+        }
+        int id = SlottedPage.slotId(page, slot);
+        if (id == rnd || SlottedPage.slotOf(id) == slot && SlottedPage.generationOf(id) > SlottedPage.generationOf(rnd)) {
+            // 该下标已被更新的代数复用，说明此数据项已被删除
+            return -1;
+        }
+        if (SlottedPage.isRemoved(page, slot) && SlottedPage.slotOf(id) == slot) {
+            return slot;
+        }
+        throw new PageCorruptedException(3);
+    }
+
+    @Override
+    public void insertItemWithUuid(TransactionContext txContext, byte[] item, long uuid) {
+        int pageId = (int) (uuid >> 32);
+        raiseTempFreePage(pageId);
         var page = getPage(uuid);
-        int id = getRndByUuid(uuid);
+        page.latchExclusive();
         try {
-            var pageHeader = getPageHeader(page);
-            if (pageHeader.isEmpty()) {
-                return false;
-            } else {
-                for (var item : pageHeader.get().item) {
-                    if (id == item.uuid) {
-                        return true;
-                    }
-                }
+            if (!SlottedPage.isInitialized(page)) {
+                // 如果获取的页没有页头信息，则进行初始化。
+                SlottedPage.init(page, this.pageSize);
+            }
+            int rnd = getRndByUuid(uuid);
+            // 检查与插入在同一把页锁内完成。若存在或已被删除则不需要恢复，直接返回
+            int slot = recoverySlot(page, rnd);
+            if (slot >= 0) {
+                insertToPage(page, txContext, item, rnd, slot);
+                this.freeSpaceMap.update(pageId, SlottedPage.leftSpace(page));
             }
-            return false;
         } catch (Exception e) {
-            throw new PageCorruptedException(2);
+            throw new PageCorruptedException(3);
         } finally {
+            page.unlatchExclusive();
             releasePage(page);
         }
     }
 
+    /**
+     * 在已加锁的页中查找uuid对应的数据项
+     *
+     * @return 数据项标志的下标
+     * @throws UUIDException 数据项不存在或已被删除
+     */
+    private static int findSlot(Page page, long uuid) throws UUIDException {
+        if (!SlottedPage.isInitialized(page)) {
+            throw new UUIDException(2);
+        }
+        int rnd = getRndByUuid(uuid);
+        int slot = SlottedPage.findSlot(page, rnd);
+        if (slot < 0) {
+            throw new UUIDException(SlottedPage.wasRemoved(page, rnd) ? 3 : 2);
+        }
+        return slot;
+    }
+
+    /**
+     * uuid的页号是否在已使用的页范围内
+     */
+    private boolean inRange(long uuid) {
+        var pageId = uuid >> 32;
+        return pageId >= 0 && pageId <= this.tempFreePage.get();
+    }
+
     @Override
     public byte[] queryItemByUuid(long uuid) throws UUIDException {
-        if (checkUuidExist(uuid)) {
-            var page = getPage(uuid);
-            try {
-                var header = getPageHeader(page);
-                if (header.isEmpty()) {
-                    throw new UUIDException(2);
-                } else {
-                    // 遍历所有的item读取数据
-                    var items = header.get().item;
-                    int id = getRndByUuid(uuid);
-                    for (var item : items) {
-                        if (item.uuid == id) {
-                            var s = parseData(page, item);
-                            return s;
-                        }
-                    }
-                }
-                return new byte[0];
-            } catch (Exception e) {
-                throw new UUIDException(2);
-            } finally {
-                releasePage(page);
-            }
-        } else {
+        if (!inRange(uuid)) {
+            throw new UUIDException(2);
+        }
+        var page = getPage(uuid);
+        page.latchShared();
+        try {
+            int slot = findSlot(page, uuid);
+            return readItem(page, SlottedPage.slotOffset(page, slot));
+        } catch (UUIDException e) {
+            throw e;
+        } catch (Exception e) {
             throw new UUIDException(2);
+        } finally {
+            page.unlatchShared();
+            releasePage(page);
         }
     }
 
 
     @Override
     public List<byte[]> listItemByPageId(int pageId) {
+        readAhead(pageId);
         var page = getPage(pageId);
+        page.latchShared();
         try {
             List<byte[]> bytes = new ArrayList<>();
-            var pageHeaderOp = getPageHeader(page);
-            if (pageHeaderOp.isPresent()) {
-                var pageHeader = pageHeaderOp.get();
-                for (var item : pageHeader.item) {
-                    var data = parseData(page, item);
-                    bytes.add(data);
+            if (SlottedPage.isInitialized(page)) {
+                int n = SlottedPage.recordNumber(page);
+                for (int i = 0; i < n; i++) {
+                    // 移动来的数据项由原位置的转发项读出
+                    if (SlottedPage.isRemoved(page, i)) {
+                        continue;
+                    }
+                    int offset = SlottedPage.slotOffset(page, i);
+                    if (!isMoved(SlottedPage.dataType(page, offset))) {
+                        bytes.add(readItem(page, offset));
+                    }
                 }
             }
             return bytes;
         } catch (Exception e) {
             throw new PageCorruptedException(2);
         } finally {
+            page.unlatchShared();
             releasePage(page);
         }
     }
 
+    @Override
+    public ItemCursor scan() {
+        return new HeapCursor();
+    }
+
+    /**
+     * 按页号顺序扫描时预读之后的页，不超过当前的空闲页。仍在上次预读窗口前半段时不再重复提交
+     */
+    private void readAhead(int pageId) {
+        int until = this.readAheadUntil;
+        if (pageId + 1 >= until - PageManager.READ_AHEAD_SIZE && pageId + PageManager.READ_AHEAD_SIZE / 2 < until) {
+            return;
+        }
+        int end = Math.min(pageId + 1 + PageManager.READ_AHEAD_SIZE, this.tempFreePage.get() + 1);
+        int start = until > pageId + 1 && until <= end ? until : pageId + 1;
+        if (start < end) {
+            this.pageStorage.prefetch(start, end - start);
+            this.readAheadUntil = end;
+        }
+    }
+
     @Override
     public void updateItemByUuid(TransactionContext txContext, long uuid, byte[] item) throws UUIDException, PageCorruptedException {
+        if (!inRange(uuid)) {
+            throw new UUIDException(2);
+        }
+        int pageId = (int) (uuid >> 32);
+        boolean overflow = item.length >= MAX_RECORD_SIZE;
+        List<Integer> chain = new ArrayList<>();
         var page = getPage(uuid);
+        page.latchExclusive();
         try {
-            if (checkUuidExist(uuid)) {
-                var pageHeader = getPageHeader(page);
-                var items = pageHeader.get().item;
-                try {
-                    for (var i : items) {
-                        if (i.uuid == getRndByUuid(uuid)) {
-                            var offset = i.offset;
-                            var bytes = JBBPOut.BeginBin().
-                                    Byte(NORMAL_DATA).
-                                    Int(item.length)
-                                    .Byte(item)
-                                    .End().toByteArray();
-                            page.patchData(offset, bytes);
-                            return;
-                        }
+            int slot = findSlot(page, uuid);
+            int offset = SlottedPage.slotOffset(page, slot);
+            byte type = SlottedPage.dataType(page, offset);
+            // 长度不变的普通数据项直接覆盖，如MVCC中修改xmax
+            if (type == NORMAL_DATA && !overflow && SlottedPage.dataSize(page, offset) == item.length) {
+                SlottedPage.writeData(page, offset, item);
+                return;
+            }
+            // 页内既放不下新数据，也放不下转发项时，在修改任何内容之前报错
+            boolean fits = fits(page, slot, overflow ? OVERFLOW_STUB_SIZE : item.length);
+            if (!fits && !fits(page, slot, FORWARD_STUB_SIZE)) {
+                throw new PageCorruptedException(4);
+            }
+            var old = readStored(page, offset);
+            long moved = type == FORWARD_DATA ? ByteBuffer.wrap(SlottedPage.readData(page, offset)).getLong() : -1;
+            if (isOverflow(old.type)) {
+                chain = OverflowChain.pagesOf(this.pageStorage, old.data);
+            }
+            // 复用原有的溢出页，之后chain中只剩不再使用的页
+            byte[] stored = item;
+            if (overflow) {
+                stored = writeOverflow(item, chain);
+                chain = new ArrayList<>();
+            }
+            if (fits) {
+                // 放回原位置，删除移动后的数据项
+                resize(page, slot, overflow ? OVERFLOW_DATA : NORMAL_DATA, stored);
+                if (moved >= 0) {
+                    removeFromPage((int) (moved >> 32), List.of(getRndByUuid(moved)), false);
+                }
+            } else {
+                byte movedType = overflow ? MOVED_OVERFLOW_DATA : MOVED_NORMAL_DATA;
+                if (moved < 0 || !resizeMoved(moved, movedType, stored)) {
+                    // 移到之后的页中，原位置改为转发项
+                    long target = insertMoved(pageId, movedType, stored);
+                    resize(page, slot, FORWARD_DATA, ByteBuffer.allocate(FORWARD_STUB_SIZE).putLong(target).array());
+                    if (moved >= 0) {
+                        removeFromPage((int) (moved >> 32), List.of(getRndByUuid(moved)), false);
                     }
-                } catch (PageException | IOException e) {
-                    throw new PageCorruptedException(2, e);
                 }
+            }
+            this.freeSpaceMap.update(pageId, SlottedPage.leftSpace(page));
+        } finally {
+            page.unlatchExclusive();
+            releasePage(page);
+        }
+        for (int overflowPage : chain) {
+            this.pageStorage.freePage(overflowPage);
+        }
+    }
+
+    /**
+     * 第slot个数据项的数据改为length字节后，页内空间是否足够
+     */
+    private static boolean fits(Page page, int slot, int length) {
+        int offset = SlottedPage.slotOffset(page, slot);
+        return SlottedPage.leftSpace(page) + SlottedPage.dataSize(page, offset) >= length;
+    }
+
+    /**
+     * 修改第slot个数据项，长度可以改变，调用方需先用fits检查空间。变短时整理页面，
+     * 变长时先删去原数据并整理页面，再将新数据放在空闲区域的末尾。数据项标志的下标与编号不变
+     */
+    private void resize(Page page, int slot, byte type, byte[] data) {
+        int offset = SlottedPage.slotOffset(page, slot);
+        int oldSize = SlottedPage.dataSize(page, offset);
+        if (data.length <= oldSize) {
+            SlottedPage.writeData(page, offset, type, data);
+            if (data.length < oldSize) {
+                SlottedPage.writeCounts(page, SlottedPage.compact(page, this.pageSize), SlottedPage.recordNumber(page));
+            }
+            return;
+        }
+        int rnd = SlottedPage.slotId(page, slot);
+        SlottedPage.writeSlot(page, slot, rnd, SlottedPage.REMOVED_OFFSET);
+        int leftSpace = SlottedPage.compact(page, this.pageSize);
+        offset = SlottedPage.lowestOffset(page, this.pageSize) - data.length - DATA_EXTRA_SIZE;
+        SlottedPage.writeSlot(page, slot, rnd, offset);
+        SlottedPage.writeData(page, offset, type, data);
+        SlottedPage.writeCounts(page, leftSpace - data.length - DATA_EXTRA_SIZE, SlottedPage.recordNumber(page));
+    }
+
+    /**
+     * 在移动后的数据项所在页内修改它
+     *
+     * @return 页内空间不足时返回false
+     */
+    private boolean resizeMoved(long moved, byte type, byte[] data) {
+        int pageId = (int) (moved >> 32);
+        var page = getPage(pageId);
+        page.latchExclusive();
+        try {
+            int slot = SlottedPage.findSlot(page, getRndByUuid(moved));
+            if (slot < 0) {
+                throw new PageCorruptedException(2);
+            }
+            if (!fits(page, slot, data.length)) {
+                return false;
+            }
+            resize(page, slot, type, data);
+            this.freeSpaceMap.update(pageId, SlottedPage.leftSpace(page));
+            return true;
+        } finally {
+            page.unlatchExclusive();
+            releasePage(page);
+        }
+    }
+
+    /**
+     * 将移动的数据项插入到homePageId之后的页中。调用方持有原页的锁
+     * <p>
+     * 数据页之间按页号从小到大加锁，此处只会再锁页号更大的数据页。分配新页时会锁表头页0，
+     * 写溢出页链时会锁复用的溢出页，其页号可能小于原页；这两类锁都在最后获取并立即释放，
+     * 持有期间不再等待其他页锁，因此不会形成环，不会死锁。
+     * </p>
+     *
+     * @return 移动后的UUID
+     */
+    private long insertMoved(int homePageId, byte type, byte[] data) {
+        var items = List.of(data);
+        var types = new byte[]{type};
+        List<Long> uuids = new ArrayList<>(1);
+        int from = homePageId + 1;
+        while (uuids.isEmpty()) {
+            int pageId = this.freeSpaceMap.search(needOf(data), from, this.tempFreePage.get() + 1, from);
+            if (pageId < 0) {
+                pageId = allocatePage();
             } else {
-                throw new UUIDException(2);
+                from = pageId + 1;
             }
+            tryInsert(pageId, items, types, uuids);
+        }
+        return uuids.get(0);
+    }
+
+    @Override
+    public InputStream queryItemStreamByUuid(long uuid) throws UUIDException {
+        if (!inRange(uuid)) {
+            throw new UUIDException(2);
+        }
+        var page = getPage(uuid);
+        page.latchShared();
+        byte[] data;
+        try {
+            int slot = findSlot(page, uuid);
+            var stored = readStored(page, SlottedPage.slotOffset(page, slot));
+            data = stored.data;
+            if (!isOverflow(stored.type)) {
+                return new ByteArrayInputStream(data);
+            }
+        } catch (UUIDException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UUIDException(2);
         } finally {
+            page.unlatchShared();
             releasePage(page);
         }
+        // 溢出页链在读取时逐页获取，不持有数据页的锁，链被并发修改时由版本检查发现
+        return OverflowChain.stream(this.pageStorage, data);
     }
 
     @Override
     public byte[] getMetadata() {
-        var page = getPage(0);
-        var header = parseHeader(page);
-        if (checkTableHeader(page) && header.hasHeaderInfo == HAS_HEADER) {
+        while (true) {
+            var header = readHeader();
+            if (header == null) {
+                // 默认Metadata为空
+                return new byte[0];
+            }
             // 若表头已经被初始化并且有标志位的话，就说明有表头信息，进行获取.
-            byte[] h;
             try {
-                h = queryItemByUuid(header.headerUuid);
+                return queryItemByUuid(header.headerUuid);
             } catch (UUIDException e) {
+                // 表头信息在读取期间被替换，旧的数据项已被删除，重新读取表头
+                if (e.getSubId() == 3 && readHeaderUuid() != header.headerUuid) {
+                    continue;
+                }
                 // 若UUID不存在，肯定是页头的问题，因为控制过程都是ItemStorage操作的
                 throw new PageCorruptedException(1, e);
-            } finally {
-                releasePage(page);
             }
-            return h;
-        } else {
-            // 默认Metadata为空
+        }
+    }
+
+    /**
+     * 读取表头，没有表头信息时返回null
+     */
+    private TableHeader readHeader() {
+        var page = getPage(0);
+        page.latchShared();
+        try {
+            var header = parseHeader(page);
+            if (checkTableHeader(page) && header.hasHeaderInfo == HAS_HEADER) {
+                return header;
+            }
+            return null;
+        } finally {
+            page.unlatchShared();
             releasePage(page);
-            return new byte[0];
         }
     }
 
+    /**
+     * 当前表头信息对应的UUID，没有表头信息时返回-1
+     */
+    private long readHeaderUuid() {
+        var header = readHeader();
+        return header == null ? -1 : header.headerUuid;
+    }
+
     @Override
     public void setMetadata(TransactionContext txContext, byte[] metadata) throws PageCorruptedException {
         var page = getPage(0);
+        TableHeader old;
         try {
             var headerUuid = insertItem(txContext, metadata);
-            var bytes = JBBPOut.BeginBin().
-                    Byte(HAS_HEADER).
-                    Long(headerUuid).End().toByteArray();
-            page.patchData(HEADER_OFFSET, bytes);
+            var bytes = ByteBuffer.allocate(9)
+                    .put(HAS_HEADER)
+                    .putLong(headerUuid)
+                    .array();
+            page.latchExclusive();
+            try {
+                old = parseHeader(page);
+                page.patchData(HEADER_OFFSET, bytes);
+            } finally {
+                page.unlatchExclusive();
+            }
         } catch (Exception e) {
             throw new PageCorruptedException(1, e);
         } finally {
             releasePage(page);
         }
+        // 回收旧的表头信息，使其不出现在顺序遍历中
+        if (old.hasHeaderInfo == HAS_HEADER) {
+            removeItems(List.of(old.headerUuid));
+        }
     }
 
     @Override
     public void removeItems(List<Long> uuids) {
-
+        // 按页分组，每页只加锁、整理一次
+        Map<Integer, List<Integer>> pages = new TreeMap<>();
+        for (long uuid : uuids) {
+            int pageId = (int) (uuid >> 32);
+            if (pageId > 0 && inRange(uuid)) {
+                pages.computeIfAbsent(pageId, k -> new ArrayList<>()).add(getRndByUuid(uuid));
+            }
+        }
+        pages.forEach((pageId, rnds) -> removeFromPage(pageId, rnds, true));
     }
 
     /**
+     * 删除页内的数据项并整理页面，同时删除转发项指向的数据项。不存在或已被删除的数据项被忽略
      *
+     * @param pageId       页号
+     * @param rnds         数据项编号
+     * @param freeOverflow 是否释放数据项的溢出页链，更新时溢出页链已被复用则不释放
+     */
+    private void removeFromPage(int pageId, List<Integer> rnds, boolean freeOverflow) {
+        List<Integer> chains = new ArrayList<>();
+        List<Long> forwarded = new ArrayList<>();
+        var page = getPage(pageId);
+        page.latchExclusive();
+        try {
+            if (!SlottedPage.isInitialized(page)) {
+                return;
+            }
+            int removed = 0;
+            for (int rnd : rnds) {
+                int slot = SlottedPage.findSlot(page, rnd);
+                if (slot < 0) {
+                    continue;
+                }
+                int offset = SlottedPage.slotOffset(page, slot);
+                byte type = SlottedPage.dataType(page, offset);
+                if (type == FORWARD_DATA) {
+                    forwarded.add(ByteBuffer.wrap(SlottedPage.readData(page, offset)).getLong());
+                } else if (isOverflow(type) && freeOverflow) {
+                    chains.addAll(OverflowChain.pagesOf(this.pageStorage, SlottedPage.readData(page, offset)));
+                }
+                // 保留数据项编号，使旧的uuid能被识别为已删除
+                SlottedPage.writeSlot(page, slot, rnd, SlottedPage.REMOVED_OFFSET);
+                removed++;
+            }
+            if (removed > 0) {
+                int leftSpace = SlottedPage.compact(page, this.pageSize);
+                SlottedPage.writeCounts(page, leftSpace, SlottedPage.recordNumber(page));
+                this.freeSpaceMap.update(pageId, leftSpace);
+            }
+        } finally {
+            page.unlatchExclusive();
+            releasePage(page);
+        }
+        for (int overflowPage : chains) {
+            this.pageStorage.freePage(overflowPage);
+        }
+        if (!forwarded.isEmpty()) {
+            removeItems(forwarded);
+        }
+    }
+
+    /**
+     * 普通数据项的标志位
      */
     final static byte NORMAL_DATA = 121;
+    /**
+     * 存放在溢出页链中的数据项的标志位
+     */
+    final static byte OVERFLOW_DATA = 122;
+    /**
+     * 转发项的标志位，数据内容为移动后的UUID
+     */
+    final static byte FORWARD_DATA = 123;
+    /**
+     * 移动到其他页的普通数据项的标志位
+     */
+    final static byte MOVED_NORMAL_DATA = 124;
+    /**
+     * 移动到其他页的溢出数据项的标志位
+     */
+    final static byte MOVED_OVERFLOW_DATA = 125;
+    /**
+     * 溢出数据项在数据页中的内容大小
+     */
+    final static int OVERFLOW_STUB_SIZE = 12;
+    /**
+     * 转发项的数据内容大小
+     */
+    final static int FORWARD_STUB_SIZE = 8;
+    /**
+     * 表头标志位1 2 3 4
+     */
+    final static int TABLE_HEADER_FLAG = 0x01020304;
+    /**
+     * 页头标志位2 3 4 5
+     */
+    final static int PAGE_HEADER_FLAG = 0x02030405;
     /**
      * 头部标志的偏移
      */
@@ -566,124 +1005,152 @@ public class ItemStorage implements IItemStorage {
      */
     final static int LEFT_SPACE_OFFSET = 12;
     /**
-     * 页的大小
+     * 新页中页头等保留的空间，新页的剩余空间为页大小减去该值
      */
-    final static int PAGE_SIZE = 4096;
+    final static int PAGE_RESERVED_SIZE = 24;
     /**
-     * 单个数据项的最大值，超过的话使用拉链
+     * 插入分片数，即同时用于插入的页数
      */
-    final static int MAX_RECORD_SIZE = 512;
+    final static int INSERT_PAGE_NUM = Math.max(1, Runtime.getRuntime().availableProcessors());
     /**
-     * 每个页保留的大小
+     * 单个数据项的最大值，不小于该值的数据项存放在溢出页链中
      */
-    final static int MIN_LEFT_SPACE = 409;
+    final static int MAX_RECORD_SIZE = 512;
 
     /**
-     * 表头
+     * 顺序遍历数据页的游标
+     * <p>
+     * 读入一页时固定并加读锁，复制整页数据后立即释放，普通数据项的内容是这份副本上的视图。
+     * 转发项与溢出的数据项在加锁时读出完整内容。遍历时不持有任何页锁，可以同时修改存储。
+     * </p>
      */
-    public static class TableHeader {
-        /**
-         * 是否是表头的标志
-         */
-        @Bin
-        int headerFlag;
+    private class HeapCursor implements ItemCursor {
+
+        @Override
+        public boolean next() {
+            while (++this.index >= this.uuids.size()) {
+                if (this.pageId >= tempFreePage.get()) {
+                    return false;
+                }
+                loadPage(++this.pageId);
+            }
+            return true;
+        }
+
+        @Override
+        public long getUuid() {
+            return this.uuids.get(this.index);
+        }
+
+        @Override
+        public ByteBuffer getPayload() {
+            return this.payloads.get(this.index);
+        }
+
+        @Override
+        public void close() {
+            this.uuids.clear();
+            this.payloads.clear();
+            this.pageId = Integer.MAX_VALUE;
+        }
+
         /**
-         * 第一个可使用的空闲页编号
+         * 读入一页中的数据项，溢出页与未初始化的页没有数据项
          */
-        @Bin
-        int tempFreePage;
+        private void loadPage(int pageId) {
+            this.uuids.clear();
+            this.payloads.clear();
+            this.index = -1;
+            readAhead(pageId);
+            var page = getPage(pageId);
+            page.latchShared();
+            try {
+                if (!SlottedPage.isInitialized(page)) {
+                    return;
+                }
+                var copy = page.getDataBytes();
+                int n = SlottedPage.recordNumber(page);
+                for (int i = 0; i < n; i++) {
+                    if (SlottedPage.isRemoved(page, i)) {
+                        continue;
+                    }
+                    int offset = SlottedPage.slotOffset(page, i);
+                    byte type = SlottedPage.dataType(page, offset);
+                    long uuid = ((long) pageId << 32) | (SlottedPage.slotId(page, i) & 0xFFFFFFFFL);
+                    if (isMoved(type) || uuid == this.headerUuid) {
+                        // 移动来的数据项由原位置的转发项读出
+                        continue;
+                    }
+                    ByteBuffer payload;
+                    if (type == NORMAL_DATA) {
+                        int size = SlottedPage.dataSize(page, offset);
+                        payload = ByteBuffer.wrap(copy, offset + DATA_EXTRA_SIZE, size).slice().asReadOnlyBuffer();
+                    } else {
+                        payload = ByteBuffer.wrap(readItem(page, offset)).asReadOnlyBuffer();
+                    }
+                    this.uuids.add(uuid);
+                    this.payloads.add(payload);
+                }
+            } catch (IndexOutOfBoundsException e) {
+                throw new PageCorruptedException(2, e);
+            } finally {
+                page.unlatchShared();
+                releasePage(page);
+            }
+        }
+
         /**
-         * 是否有表头信息
+         * 当前读入的页号，从表头页之后开始
          */
-        @Bin
-        byte hasHeaderInfo;
+        private int pageId = 0;
         /**
-         * 表头信息对应的UUID
+         * 表头信息对应的数据项不属于表中的数据，遍历时跳过
          */
-        @Bin
-        long headerUuid;
-
-        public Object newInstance(Class<?> klazz) {
-            return klazz == TableHeader.class ? new TableHeader() : null;
-        }
+        private final long headerUuid = readHeaderUuid();
+        private int index = -1;
+        private final List<Long> uuids = new ArrayList<>();
+        private final List<ByteBuffer> payloads = new ArrayList<>();
     }
 
     /**
-     * 每个数据项对应的相关信息
+     * 数据页中存放的数据项内容
      */
-    public static class Item {
+    private static class StoredItem {
+
+        StoredItem(byte type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+
         /**
-         * 数据项编号
+         * 标志位
          */
-        @Bin
-        public int uuid;
+        final byte type;
         /**
-         * 页内偏移
+         * 数据内容，溢出的数据项为指向溢出页链的内容
          */
-        @Bin
-        public int offset;
-
-        public Object newInstance(Class<?> klazz) {
-            return klazz == Item.class ? new Item() : null;
-        }
+        final byte[] data;
     }
 
     /**
-     * 页头
+     * 表头
      */
-    public static class PageHeader {
+    static class TableHeader {
         /**
-         * 页头标志
-         */
-        @Bin
-        public int pageFlag;
-
-        /**
-         * 日志记录编号
+         * 是否是表头的标志
          */
-        @Bin
-        long lsn;
+        int headerFlag;
         /**
-         * 剩余空间大小
+         * 第一个可使用的空闲页编号
          */
-        @Bin
-        int leftSpace;
+        int tempFreePage;
         /**
-         * 页内记录总数
+         * 是否有表头信息
          */
-        @Bin
-        int recordNumber;
+        byte hasHeaderInfo;
         /**
-         * 页内记录的相关信息
+         * 表头信息对应的UUID
          */
-        @Bin
-        Item[] item;
-
-        public PageHeader() {
-        }
-
-        public PageHeader(int pageFlag, long lsn, int leftSpace, int recordNumber) {
-            this.pageFlag = pageFlag;
-            this.lsn = lsn;
-            this.leftSpace = leftSpace;
-            this.recordNumber = recordNumber;
-        }
-
-        public Object newInstance(Class<?> klazz) {
-            return klazz == PageHeader.class ? new PageHeader() : null;
-        }
-    }
-
-    public static class ItemContent {
-        @Bin
-        byte type;
-        @Bin
-        int size;
-        @Bin
-        byte[] data;
-
-        public Object newInstance(Class<?> klazz) {
-            return klazz == ItemContent.class ? new ItemContent() : null;
-        }
+        long headerUuid;
     }
 }
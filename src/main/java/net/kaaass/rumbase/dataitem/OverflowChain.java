@@ -0,0 +1,257 @@
+package net.kaaass.rumbase.dataitem;
+
+import net.kaaass.rumbase.dataitem.exception.PageCorruptedException;
+import net.kaaass.rumbase.page.Page;
+import net.kaaass.rumbase.page.PageStorage;
+import net.kaaass.rumbase.page.exception.PageException;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 溢出页链
+ * <p>
+ * 大小不小于MAX_RECORD_SIZE的数据项存放在一串溢出页中，数据页中只保留指向链首的数据项
+ * |链首页号(4字节)|数据总长度(4字节)|版本(4字节)|。每个溢出页的格式为
+ * |溢出页标志位 3 4 5 6(4字节)|下一溢出页号，0表示链尾(4字节)|本页数据长度n(4字节)|版本(4字节)|数据(n字节)|
+ * </p>
+ * <p>
+ * 每次写入链时取一个新的随机版本，写入链上每一页与数据页中的数据项。流式读取不持有数据页的锁，
+ * 链上的页可能在读取过程中被改写、释放或复用，读到版本不符的页时报错，而不是返回拼接出的数据。
+ * </p>
+ *
+ * @author kaito
+ */
+final class OverflowChain {
+
+    private OverflowChain() {
+    }
+
+    /**
+     * 存放length字节的数据需要的溢出页数
+     */
+    static int pageCount(int length, int pageSize) {
+        int capacity = pageSize - HEADER_SIZE;
+        return Math.max(1, (length + capacity - 1) / capacity);
+    }
+
+    /**
+     * 将数据依次写入给定的溢出页
+     *
+     * @param storage 页存储
+     * @param pageIds 溢出页号，个数为pageCount(data.length)
+     * @param data    数据
+     * @return 存放在数据页中的指向链首的数据项
+     */
+    static byte[] write(PageStorage storage, List<Integer> pageIds, byte[] data) {
+        int capacity = storage.getPageSize() - HEADER_SIZE;
+        int version = ThreadLocalRandom.current().nextInt();
+        for (int i = 0; i < pageIds.size(); i++) {
+            int from = i * capacity;
+            int length = Math.min(capacity, data.length - from);
+            int next = i + 1 < pageIds.size() ? pageIds.get(i + 1) : 0;
+            var bytes = ByteBuffer.allocate(HEADER_SIZE + length)
+                    .putInt(OVERFLOW_PAGE_FLAG)
+                    .putInt(next)
+                    .putInt(length)
+                    .putInt(version)
+                    .put(data, from, length)
+                    .array();
+            var page = storage.get(pageIds.get(i));
+            page.latchExclusive();
+            try {
+                page.patchData(0, bytes);
+            } catch (PageException e) {
+                throw new PageCorruptedException(3, e);
+            } finally {
+                page.unlatchExclusive();
+                page.unpin();
+            }
+        }
+        return ByteBuffer.allocate(ItemStorage.OVERFLOW_STUB_SIZE)
+                .putInt(pageIds.get(0))
+                .putInt(data.length)
+                .putInt(version)
+                .array();
+    }
+
+    /**
+     * 列出链上的溢出页号
+     *
+     * @param storage 页存储
+     * @param stub    指向链首的数据项
+     * @return 溢出页号
+     */
+    static List<Integer> pagesOf(PageStorage storage, byte[] stub) {
+        var buffer = ByteBuffer.wrap(stub);
+        int count = pageCount(buffer.getInt(4), storage.getPageSize());
+        int version = buffer.getInt(8);
+        List<Integer> pageIds = new ArrayList<>(count);
+        int pageId = buffer.getInt(0);
+        while (pageId != 0) {
+            if (pageIds.size() >= count) {
+                throw new PageCorruptedException(2);
+            }
+            pageIds.add(pageId);
+            var page = storage.get(pageId);
+            page.latchShared();
+            try {
+                checkFlag(page.getInt(0));
+                checkVersion(page, version);
+                pageId = page.getInt(4);
+            } finally {
+                page.unlatchShared();
+                page.unpin();
+            }
+        }
+        return pageIds;
+    }
+
+    /**
+     * 读出整条链上的数据
+     *
+     * @param storage 页存储
+     * @param stub    指向链首的数据项
+     * @return 数据
+     */
+    static byte[] read(PageStorage storage, byte[] stub) {
+        int length = ByteBuffer.wrap(stub).getInt(4);
+        var data = new byte[length];
+        try (var in = stream(storage, stub)) {
+            int read = 0;
+            while (read < length) {
+                int n = in.read(data, read, length - read);
+                if (n < 0) {
+                    throw new PageCorruptedException(2);
+                }
+                read += n;
+            }
+        }
+        return data;
+    }
+
+    /**
+     * 按页读取链上数据的输入流，每次只复制一页的数据，读完一页再取下一页
+     *
+     * @param storage 页存储
+     * @param stub    指向链首的数据项
+     * @return 输入流
+     */
+    static ChainInputStream stream(PageStorage storage, byte[] stub) {
+        var buffer = ByteBuffer.wrap(stub);
+        return new ChainInputStream(storage, buffer.getInt(0), buffer.getInt(4), buffer.getInt(8));
+    }
+
+    private static void checkFlag(int flag) {
+        if (flag != OVERFLOW_PAGE_FLAG) {
+            throw new PageCorruptedException(2);
+        }
+    }
+
+    /**
+     * 检查溢出页是否仍属于该版本的链
+     */
+    private static void checkVersion(Page page, int version) {
+        if (page.getInt(12) != version) {
+            throw new PageCorruptedException(5);
+        }
+    }
+
+    /**
+     * 溢出链的输入流
+     */
+    static class ChainInputStream extends InputStream {
+
+        ChainInputStream(PageStorage storage, int first, int length, int version) {
+            this.storage = storage;
+            this.nextPage = first;
+            this.remaining = length;
+            this.version = version;
+        }
+
+        @Override
+        public int read() {
+            if (!fill()) {
+                return -1;
+            }
+            this.remaining--;
+            return this.chunk.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, this.chunk.remaining());
+            this.chunk.get(b, off, n);
+            this.remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return this.chunk == null ? 0 : this.chunk.remaining();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /**
+         * 当前页读完时读入下一页，没有剩余数据时返回false
+         */
+        private boolean fill() {
+            if (this.remaining <= 0) {
+                return false;
+            }
+            if (this.chunk != null && this.chunk.hasRemaining()) {
+                return true;
+            }
+            if (this.nextPage == 0) {
+                throw new PageCorruptedException(2);
+            }
+            var page = this.storage.get(this.nextPage);
+            page.latchShared();
+            try {
+                checkFlag(page.getInt(0));
+                checkVersion(page, this.version);
+                int length = Math.min(page.getInt(8), this.remaining);
+                if (length <= 0) {
+                    throw new PageCorruptedException(2);
+                }
+                var bytes = new byte[length];
+                page.slice(HEADER_SIZE, length).get(bytes);
+                this.chunk = ByteBuffer.wrap(bytes);
+                this.nextPage = page.getInt(4);
+            } catch (IndexOutOfBoundsException e) {
+                throw new PageCorruptedException(2, e);
+            } finally {
+                page.unlatchShared();
+                page.unpin();
+            }
+            return true;
+        }
+
+        private final PageStorage storage;
+        private final int version;
+        private int nextPage;
+        private int remaining;
+        private ByteBuffer chunk = null;
+    }
+
+    /**
+     * 溢出页标志位3 4 5 6
+     */
+    static final int OVERFLOW_PAGE_FLAG = 0x03040506;
+    /**
+     * 溢出页页头大小
+     */
+    static final int HEADER_SIZE = 16;
+}
@@ -0,0 +1,407 @@
+package net.kaaass.rumbase.dataitem;
+
+import net.kaaass.rumbase.dataitem.exception.PageCorruptedException;
+import net.kaaass.rumbase.page.Page;
+import net.kaaass.rumbase.page.exception.PageException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 数据页的编解码
+ * <p>
+ * 直接按固定偏移读写页内的页头、数据项标志与数据内容，不复制整页，也不逐个构造数据项标志对象。
+ * 页内布局见ItemStorage。读写时的加锁由调用方负责。
+ * </p>
+ * <p>
+ * 新插入的数据项编号直接记录其数据项标志的下标：|1(1位)|代数(15位)|下标(16位)|。
+ * 代数从1开始，数据项标志被复用时增加，使旧的uuid不会指向新的数据项。
+ * 旧文件中的编号为非负随机数，最高位为0，查找时退化为顺序比较。
+ * </p>
+ * <p>
+ * 被删除的数据项保留其数据项标志，偏移记为0，编号不变，使旧的uuid能被识别为已删除。
+ * 删除后立即整理页面，把剩余的数据项移到页尾，数据项标志的下标与编号都不变，uuid保持有效。
+ * 被删除的数据项标志在插入时复用，代数加一。
+ * 日志恢复时数据项放在其编号记录的下标处，中间缺少的数据项标志写为可复用的占位。
+ * </p>
+ *
+ * @author kaito
+ */
+final class SlottedPage {
+
+    private SlottedPage() {
+    }
+
+    /**
+     * 记录下标的数据项编号的标志位
+     */
+    static final int SLOT_ADDRESSED = 0x80000000;
+    /**
+     * 新数据项的代数
+     */
+    static final int FIRST_GENERATION = 1;
+    static final int MAX_GENERATION = 0x7FFF;
+    static final int MAX_SLOT = 0xFFFF;
+    /**
+     * 被删除的数据项标志中的偏移
+     */
+    static final int REMOVED_OFFSET = 0;
+
+    /**
+     * 页是否已经初始化，即页头标志位是否为2345
+     */
+    static boolean isInitialized(Page page) {
+        return page.getInt(0) == ItemStorage.PAGE_HEADER_FLAG;
+    }
+
+    /**
+     * 初始化页头
+     *
+     * @param page     页
+     * @param pageSize 页大小
+     */
+    static void init(Page page, int pageSize) {
+        var bytes = ByteBuffer.allocate(ItemStorage.ITEM_OFFSET)
+                .putInt(ItemStorage.PAGE_HEADER_FLAG)
+                // 日志记录位置，以后若有日志记录点则使用
+                .putLong(0)
+                .putInt(pageSize - ItemStorage.PAGE_RESERVED_SIZE)
+                .putInt(0)
+                .array();
+        try {
+            page.patchData(0, bytes);
+        } catch (PageException e) {
+            throw new PageCorruptedException(1, e);
+        }
+    }
+
+    /**
+     * 页剩余空间大小
+     */
+    static int leftSpace(Page page) {
+        return page.getInt(ItemStorage.LEFT_SPACE_OFFSET);
+    }
+
+    /**
+     * 页内数据项个数
+     */
+    static int recordNumber(Page page) {
+        return page.getInt(ItemStorage.LEFT_SPACE_OFFSET + 4);
+    }
+
+    /**
+     * 第slot个数据项标志中的数据项编号，即uuid的低32位
+     */
+    static int slotId(Page page, int slot) {
+        return page.getInt(ItemStorage.ITEM_OFFSET + slot * ItemStorage.ITEM_SIZE);
+    }
+
+    /**
+     * 第slot个数据项在页内的偏移
+     */
+    static int slotOffset(Page page, int slot) {
+        return page.getInt(ItemStorage.ITEM_OFFSET + slot * ItemStorage.ITEM_SIZE + 4);
+    }
+
+    /**
+     * 生成记录下标的数据项编号
+     *
+     * @param slot       数据项标志的下标
+     * @param generation 代数，为1至MAX_GENERATION
+     * @return 数据项编号
+     */
+    static int slotAddressedId(int slot, int generation) {
+        if (slot < 0 || slot > MAX_SLOT) {
+            throw new PageCorruptedException(1);
+        }
+        return SLOT_ADDRESSED | (generation & MAX_GENERATION) << 16 | slot;
+    }
+
+    /**
+     * 数据项编号中记录的下标，旧格式的编号返回-1
+     */
+    static int slotOf(int rnd) {
+        // 代数为0时是旧格式中由Math.abs(Integer.MIN_VALUE)得到的编号
+        if ((rnd & SLOT_ADDRESSED) == 0 || generationOf(rnd) == 0) {
+            return -1;
+        }
+        return rnd & MAX_SLOT;
+    }
+
+    /**
+     * 数据项编号中记录的代数
+     */
+    static int generationOf(int rnd) {
+        return rnd >>> 16 & MAX_GENERATION;
+    }
+
+    /**
+     * 复用数据项标志时的下一代数。代数达到MAX_GENERATION的数据项标志不再复用，因此不会回绕
+     */
+    static int nextGeneration(int rnd) {
+        return generationOf(rnd) + 1;
+    }
+
+    /**
+     * 第slot个数据项是否已被删除
+     */
+    static boolean isRemoved(Page page, int slot) {
+        return slotOffset(page, slot) == REMOVED_OFFSET;
+    }
+
+    /**
+     * 恢复时为补齐下标而写入的占位数据项标志的编号，代数为0，不对应任何uuid。
+     * 占位的数据项标志记为已删除，复用时代数从FIRST_GENERATION开始
+     */
+    static int placeholderId(int slot) {
+        return SLOT_ADDRESSED | slot;
+    }
+
+    /**
+     * 第slot个数据项标志是否为占位
+     */
+    static boolean isPlaceholder(Page page, int slot) {
+        return isRemoved(page, slot) && slotId(page, slot) == placeholderId(slot);
+    }
+
+    /**
+     * 第slot个数据项标志被删除后能否复用。旧格式编号的数据项标志不复用，以免旧的uuid失去记录；
+     * 代数已达到MAX_GENERATION的数据项标志也不复用，以免旧的uuid重新指向其他数据项
+     */
+    static boolean isReusable(Page page, int slot) {
+        int rnd = slotId(page, slot);
+        return isPlaceholder(page, slot)
+                || isRemoved(page, slot) && slotOf(rnd) == slot && generationOf(rnd) < MAX_GENERATION;
+    }
+
+    /**
+     * 查找编号对应的数据项。编号中记录了下标时直接检查该下标，否则顺序比较
+     *
+     * @param page 页
+     * @param rnd  数据项编号
+     * @return 数据项下标，不存在或已被删除时返回-1
+     */
+    static int findSlot(Page page, int rnd) {
+        int n = recordNumber(page);
+        int slot = slotOf(rnd);
+        try {
+            if (slot >= 0 && slot < n && slotId(page, slot) == rnd) {
+                return isRemoved(page, slot) ? -1 : slot;
+            }
+            for (int i = 0; i < n; i++) {
+                if (slotId(page, i) == rnd) {
+                    return isRemoved(page, i) ? -1 : i;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new PageCorruptedException(1, e);
+        }
+        return -1;
+    }
+
+    /**
+     * 编号对应的数据项是否曾经存在并已被删除。数据项标志被复用后，旧的编号代数较小，同样视为已删除
+     *
+     * @param page 页
+     * @param rnd  数据项编号
+     * @return 是否已被删除
+     */
+    static boolean wasRemoved(Page page, int rnd) {
+        int n = recordNumber(page);
+        int slot = slotOf(rnd);
+        try {
+            if (slot >= 0) {
+                if (slot >= n) {
+                    return false;
+                }
+                int id = slotId(page, slot);
+                return id == rnd ? isRemoved(page, slot) : slotOf(id) == slot;
+            }
+            for (int i = 0; i < n; i++) {
+                if (slotId(page, i) == rnd) {
+                    return isRemoved(page, i);
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new PageCorruptedException(1, e);
+        }
+        return false;
+    }
+
+    /**
+     * 未删除的数据项中最小的偏移，即空闲区域的结束位置
+     *
+     * @param page     页
+     * @param pageSize 页大小
+     * @return 最小偏移，没有数据项时为pageSize - 1
+     */
+    static int lowestOffset(Page page, int pageSize) {
+        int n = recordNumber(page);
+        int lowest = pageSize - 1;
+        for (int i = 0; i < n; i++) {
+            int offset = slotOffset(page, i);
+            if (offset != REMOVED_OFFSET) {
+                lowest = Math.min(lowest, offset);
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * 第一个可以复用的数据项标志下标，从from开始查找
+     *
+     * @return 下标，没有时返回-1
+     */
+    static int reusableSlot(Page page, int from) {
+        int n = recordNumber(page);
+        for (int i = from; i < n; i++) {
+            if (isReusable(page, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 整理页面：将未删除的数据项按原有顺序紧密地移到页尾，并修改其数据项标志中的偏移。
+     * 数据项标志的下标与编号不变。
+     *
+     * @param page     页
+     * @param pageSize 页大小
+     * @return 整理后页的剩余空间
+     */
+    static int compact(Page page, int pageSize) {
+        int n = recordNumber(page);
+        List<int[]> live = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int offset = slotOffset(page, i);
+            if (offset != REMOVED_OFFSET) {
+                live.add(new int[]{offset, i});
+            }
+        }
+        // 从偏移最大的数据项开始向页尾移动，目标位置不会覆盖尚未移动的数据项
+        live.sort((a, b) -> Integer.compare(b[0], a[0]));
+        int end = pageSize - 1;
+        int used = 0;
+        try {
+            for (var item : live) {
+                int offset = item[0];
+                int length = ItemStorage.DATA_EXTRA_SIZE + dataSize(page, offset);
+                end -= length;
+                if (end != offset) {
+                    var bytes = new byte[length];
+                    page.slice(offset, length).get(bytes);
+                    page.patchData(end, bytes);
+                    writeSlot(page, item[1], slotId(page, item[1]), end);
+                }
+                used += length;
+            }
+        } catch (IndexOutOfBoundsException | PageException e) {
+            throw new PageCorruptedException(2, e);
+        }
+        return pageSize - ItemStorage.PAGE_RESERVED_SIZE - n * ItemStorage.ITEM_SIZE - used;
+    }
+
+    /**
+     * 偏移处数据项的标志位，为NORMAL_DATA至MOVED_OVERFLOW_DATA之一
+     */
+    static byte dataType(Page page, int offset) {
+        try {
+            byte type = page.slice(offset, 1).get(0);
+            if (type < ItemStorage.NORMAL_DATA || type > ItemStorage.MOVED_OVERFLOW_DATA) {
+                throw new PageCorruptedException(2);
+            }
+            return type;
+        } catch (IndexOutOfBoundsException e) {
+            throw new PageCorruptedException(2, e);
+        }
+    }
+
+    /**
+     * 偏移处数据项的数据长度
+     */
+    static int dataSize(Page page, int offset) {
+        try {
+            return page.getInt(offset + 1);
+        } catch (IndexOutOfBoundsException e) {
+            throw new PageCorruptedException(2, e);
+        }
+    }
+
+    /**
+     * 读取偏移处的数据内容。对溢出的数据项，读出的是指向溢出页链的内容
+     *
+     * @param page   页
+     * @param offset 数据项在页内的偏移
+     * @return 数据内容
+     */
+    static byte[] readData(Page page, int offset) {
+        try {
+            var head = page.slice(offset, ItemStorage.DATA_EXTRA_SIZE);
+            dataType(page, offset);
+            int size = head.getInt(1);
+            var data = new byte[size];
+            page.slice(offset + ItemStorage.DATA_EXTRA_SIZE, size).get(data);
+            return data;
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new PageCorruptedException(2, e);
+        }
+    }
+
+    /**
+     * 在偏移处写入数据内容
+     *
+     * @param page   页
+     * @param offset 数据项在页内的偏移
+     * @param data   数据内容
+     */
+    static void writeData(Page page, int offset, byte[] data) {
+        writeData(page, offset, ItemStorage.NORMAL_DATA, data);
+    }
+
+    /**
+     * 在偏移处写入指定标志位的数据内容
+     *
+     * @param page   页
+     * @param offset 数据项在页内的偏移
+     * @param type   标志位
+     * @param data   数据内容
+     */
+    static void writeData(Page page, int offset, byte type, byte[] data) {
+        var bytes = ByteBuffer.allocate(ItemStorage.DATA_EXTRA_SIZE + data.length)
+                .put(type)
+                .putInt(data.length)
+                .put(data)
+                .array();
+        try {
+            page.patchData(offset, bytes);
+        } catch (PageException e) {
+            throw new PageCorruptedException(2, e);
+        }
+    }
+
+    /**
+     * 写入第slot个数据项标志
+     */
+    static void writeSlot(Page page, int slot, int rnd, int offset) {
+        try {
+            page.putInt(ItemStorage.ITEM_OFFSET + slot * ItemStorage.ITEM_SIZE, rnd);
+            page.putInt(ItemStorage.ITEM_OFFSET + slot * ItemStorage.ITEM_SIZE + 4, offset);
+        } catch (PageException e) {
+            throw new PageCorruptedException(2, e);
+        }
+    }
+
+    /**
+     * 修改页剩余空间与数据项个数
+     */
+    static void writeCounts(Page page, int leftSpace, int recordNumber) {
+        try {
+            page.putInt(ItemStorage.LEFT_SPACE_OFFSET, leftSpace);
+            page.putInt(ItemStorage.LEFT_SPACE_OFFSET + 4, recordNumber);
+        } catch (PageException e) {
+            throw new PageCorruptedException(1, e);
+        }
+    }
+}
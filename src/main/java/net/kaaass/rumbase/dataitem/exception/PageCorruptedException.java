@@ -15,6 +15,8 @@ public class PageCorruptedException extends RumbaseRuntimeException {
         put(1, "没有相应表头信息或表头信息损坏");
         put(2, "数据项信息损坏");
         put(3, "数据插入异常");
+        put(4, "页内没有空间存放更新后的数据项");
+        put(5, "读取过程中溢出页链已被修改");
     }};
 
     public PageCorruptedException(int subID) {
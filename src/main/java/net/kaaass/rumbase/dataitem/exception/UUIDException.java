@@ -15,6 +15,7 @@ public class UUIDException extends RumbaseException {
     public static final Map<Integer, String> REASONS = new HashMap<>() {{
         put(1, "要插入的UUID已存在");
         put(2, "要查找的UUID不存在");
+        put(3, "要查找的UUID已被删除");
     }};
 
     public UUIDException(int subID) {
@@ -2,9 +2,11 @@ package net.kaaass.rumbase.dataitem.mock;
 
 import lombok.Data;
 import net.kaaass.rumbase.dataitem.IItemStorage;
+import net.kaaass.rumbase.dataitem.ItemCursor;
 import net.kaaass.rumbase.dataitem.exception.UUIDException;
 import net.kaaass.rumbase.transaction.TransactionContext;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -30,6 +32,10 @@ public class MockItemStorage implements IItemStorage {
      * 模拟的数据信息
      */
     private Map<Long, byte[]> maps;
+    /**
+     * 模拟被删除的数据项
+     */
+    private Set<Long> removed = new HashSet<>();
     /**
      * 模拟的文件头信息
      */
@@ -87,6 +93,15 @@ public class MockItemStorage implements IItemStorage {
         return r;
     }
 
+    @Override
+    public List<Long> insertItems(TransactionContext txContext, List<byte[]> items) {
+        List<Long> uuids = new ArrayList<>();
+        for (var item : items) {
+            uuids.add(insertItem(txContext, item));
+        }
+        return uuids;
+    }
+
     @Override
     public void insertItemWithUuid(TransactionContext txContext, byte[] item, long uuid) {
         maps.put(uuid, item);
@@ -97,7 +112,7 @@ public class MockItemStorage implements IItemStorage {
         if (maps.containsKey(uuid)) {
             return maps.get(uuid);
         } else {
-            throw new UUIDException(2);
+            throw new UUIDException(removed.contains(uuid) ? 3 : 2);
         }
     }
 
@@ -106,6 +121,33 @@ public class MockItemStorage implements IItemStorage {
         return new ArrayList<>(maps.values());
     }
 
+    @Override
+    public ItemCursor scan() {
+        var entries = new ArrayList<>(maps.entrySet());
+        return new ItemCursor() {
+            private int index = -1;
+
+            @Override
+            public boolean next() {
+                return ++index < entries.size();
+            }
+
+            @Override
+            public long getUuid() {
+                return entries.get(index).getKey();
+            }
+
+            @Override
+            public ByteBuffer getPayload() {
+                return ByteBuffer.wrap(entries.get(index).getValue()).asReadOnlyBuffer();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
     @Override
     public void updateItemByUuid(TransactionContext txContext, long uuid, byte[] item) throws UUIDException {
         if (maps.containsKey(uuid)) {
@@ -128,7 +170,11 @@ public class MockItemStorage implements IItemStorage {
 
     @Override
     public void removeItems(List<Long> uuids) {
-        System.out.println("已经清除文件对应uuid的信息");
+        for (var uuid : uuids) {
+            if (maps.remove(uuid) != null) {
+                removed.add(uuid);
+            }
+        }
     }
 
     @Override
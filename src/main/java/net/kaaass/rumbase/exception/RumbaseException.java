@@ -60,4 +60,12 @@ public class RumbaseException extends Exception {
         this.mainId = mainId;
         this.subId = subId;
     }
+
+    public int getMainId() {
+        return mainId;
+    }
+
+    public int getSubId() {
+        return subId;
+    }
 }
@@ -16,6 +16,12 @@ import java.util.*;
 import java.util.concurrent.locks.ReadWriteLock;
 
 /**
+ * B+树索引
+ * <p>
+ * 读操作不持有索引级的锁，只对途经的页逐一加共享锁，通过页的最大key与下一页指针右移来处理并发的分裂（B-link树）。
+ * 写操作自根向下对途经的页加独占锁，子页未满时释放所有祖先页的锁（latch crabbing），
+ * 因此只有可能随之分裂的祖先页被锁住，不同子树上的插入可以并行。
+ *
  * @author 无索魏
  */
 @Slf4j
@@ -37,10 +43,13 @@ public class BPlusTreeIndex implements Index {
      */
 
     public static Map<String, BPlusTreeIndex> B_PLUS_TREE_INDEX_MAP = new HashMap<>();
-    public static int MAX_PAGE_ITEM = (4096 - 24) / 16;
     public static int PAGE_BEGIN_POSTION = 24;
-    public static int PAGE_MID_POSTION = PAGE_BEGIN_POSTION + 16 * (BPlusTreeIndex.MAX_PAGE_ITEM) / 2;
     private static final int rootNum = 4;
+    /**
+     * 每页最多的项数与页中间项的位置，由页大小推出
+     */
+    private final int maxPageItem;
+    private final int pageMidPosition;
 
     private final Map<Long, ReadWriteLock> RW_LOCKS = new HashMap<>();
 
@@ -50,23 +59,24 @@ public class BPlusTreeIndex implements Index {
         } catch (FileException e) {
             e.printStackTrace();
         }
+        int pageSize = pageStorage == null ? PageManager.PAGE_SIZE : pageStorage.getPageSize();
+        this.maxPageItem = (pageSize - PAGE_BEGIN_POSTION) / 16;
+        this.pageMidPosition = PAGE_BEGIN_POSTION + 16 * this.maxPageItem / 2;
     }
 
 
-    synchronized public void initPage() {
+    public void initPage() {
         initRootAsLeaf();
         Page metaPage = this.pageStorage.get(0);
-        //pin
-        metaPage.pin();
+        metaPage.latchExclusive();
         setPageType(metaPage, PageType.META);
-        byte[] bs = ByteUtil.long2Bytes(5);
-        byte[] indexFlag = ByteUtil.long2Bytes(Long.MAX_VALUE);//作为索引文件的标志
         try {
-            metaPage.patchData(4, bs);
-            metaPage.patchData(12, indexFlag);
+            metaPage.putLong(4, 5);
+            metaPage.putLong(12, Long.MAX_VALUE);//作为索引文件的标志
         } catch (PageException e) {
             e.printStackTrace();
         } finally {
+            metaPage.unlatchExclusive();
             //flush
             try {
                 metaPage.flush();
@@ -79,7 +89,12 @@ public class BPlusTreeIndex implements Index {
     }
 
     public boolean isIndexedFile() {
-        return Long.MAX_VALUE == ByteUtil.bytes2Long(ByteUtil.subByte(this.pageStorage.get(0).getDataBytes(), 12, 8));
+        Page metaPage = this.pageStorage.get(0);
+        try {
+            return Long.MAX_VALUE == metaPage.getLong(12);
+        } finally {
+            metaPage.unpin();
+        }
     }
 
     @Override
@@ -88,236 +103,178 @@ public class BPlusTreeIndex implements Index {
     }
 
     @Override
-    synchronized public void insert(long dataHash, long uuid) {
-        Stack<Long> pageStack = new Stack<>();
+    public void insert(long dataHash, long uuid) {
+        // 自根向下对途经的页加独占锁，子页不满时其插入不会向上分裂，此时释放所有祖先页的锁
+        Deque<Page> latched = new ArrayDeque<>();
+        Deque<Long> latchedNums = new ArrayDeque<>();
         Page currentPage = this.pageStorage.get(rootNum);
-        //pin
-        currentPage.pin();
+        currentPage.latchExclusive();
+        latched.push(currentPage);
+        latchedNums.push((long) rootNum);
         while (getPageType(currentPage) != PageType.LEAF) {
-            long nextPageNum = 0;
-
+            long nextPageNum;
             try {
                 nextPageNum = queryFirstInternalItem(currentPage, dataHash);
             } catch (ItemInNextPageException e) {
-                //unpin
-                currentPage.unpin();
-                currentPage = this.pageStorage.get(e.getNextPageNum());
-                //pin
-                currentPage.pin();
+                currentPage = moveRightExclusive(latched, latchedNums, e.getNextPageNum());
                 continue;
             }
-
-            pageStack.add(nextPageNum);
-            //unpin
-            currentPage.unpin();
-            currentPage = this.pageStorage.get(nextPageNum);
-            //pin
-            currentPage.pin();
+            Page child = this.pageStorage.get(nextPageNum);
+            child.latchExclusive();
+            if (getPageItemNum(child) < this.maxPageItem) {
+                releaseAll(latched);
+                latchedNums.clear();
+            }
+            latched.push(child);
+            latchedNums.push(nextPageNum);
+            currentPage = child;
         }
-        boolean isInsert = false;
-        while (!isInsert) {
-
-            try {
-                insertLeafItem(currentPage, dataHash, uuid);
-                isInsert = true;
-                //flush
+        try {
+            while (true) {
                 try {
-                    currentPage.flush();
-                } catch (FileException e) {
-                    e.printStackTrace();
+                    insertLeafItem(currentPage, dataHash, uuid);
+                    return;
+                } catch (ItemInNextPageException e) {
+                    currentPage = moveRightExclusive(latched, latchedNums, e.getNextPageNum());
+                } catch (PageFullException e) {
+                    splitLeaf(latched, latchedNums, dataHash, uuid);
+                    return;
                 }
-                //unpin
-                currentPage.unpin();
+            }
+        } finally {
+            releaseAll(latched);
+        }
+    }
+
+    /**
+     * 分裂已满的叶并顺便插入条目，再将新的分隔键逐层插入父页，父页已满时继续分裂
+     * <p>
+     * 叶与需要随之分裂的祖先页在下降时都已加独占锁并仍在栈中。新页在原页的下一页指针写入之前对其他操作不可见，
+     * 因此不需要加锁。
+     *
+     * @param latched     已加独占锁的页，栈顶为已满的叶
+     * @param latchedNums 与latched对应的页号
+     */
+    private void splitLeaf(Deque<Page> latched, Deque<Long> latchedNums, long dataHash, long uuid) {
+        Page page = latched.peek();
+        long pageNum = latchedNums.peek();
+        long rawPageNum = this.getRawPageNum();
+        Page rawPage = this.pageStorage.get(rawPageNum);
+        long oldKey = getMaxKey(page);
+        long newKey = insertFullLeaf(page, rawPage, rawPageNum, dataHash, uuid);
+        release(rawPage);
+        if (pageNum == rootNum) {
+            // 根的页号固定，将分裂后的左半部分移到新页，根在原地变为INTERNAL
+            long rawPageNum0 = this.getRawPageNum();
+            Page rawPage0 = this.pageStorage.get(rawPageNum0);
+            copyPage(page, rawPage0);
+            release(rawPage0);
+            initRootAsInternal(page, newKey, rawPageNum0, rawPageNum);
+            return;
+        }
+        releaseTop(latched, latchedNums);
+        // 逐层向上插入：父页中oldKey - pageNum替换为newKey - pageNum、oldKey - rawPageNum
+        while (true) {
+            Page parent = latched.peek();
+            long parentNum = latchedNums.peek();
+            try {
+                insertInternalItem(parent, oldKey, pageNum, rawPageNum, newKey);
+                return;
             } catch (ItemInNextPageException e) {
-                //unpin
-                currentPage.unpin();
-                currentPage = this.pageStorage.get(e.getNextPageNum());
-                //pin
-                currentPage.pin();
+                moveRightExclusive(latched, latchedNums, e.getNextPageNum());
             } catch (PageFullException e) {
-                long splitPageNum = 0;
-                if (pageStack.size() != 0) {
-                    splitPageNum = pageStack.pop();
+                if (parentNum == rootNum) {
+                    long rawPageNum0 = this.getRawPageNum();
+                    Page rawPage0 = this.pageStorage.get(rawPageNum0);
+                    long rawPageNum1 = this.getRawPageNum();
+                    Page rawPage1 = this.pageStorage.get(rawPageNum1);
+                    copyPage(parent, rawPage0);
+                    long rootKey = insertFullInternal(rawPage0, rawPage1, rawPageNum1, oldKey, pageNum, rawPageNum, newKey);
+                    release(rawPage0);
+                    release(rawPage1);
+                    initRootAsInternal(parent, rootKey, rawPageNum0, rawPageNum1);
+                    return;
                 }
-                long rawPageNum = this.getRawPageNum();
-                Page rawPage = this.pageStorage.get(rawPageNum);
-                //pin
-                rawPage.pin();
-                long newKey = insertFullLeaf(currentPage, rawPage, rawPageNum, dataHash, uuid);
-                //flush
-                try {
-                    currentPage.flush();
-                } catch (FileException eee) {
-                    eee.printStackTrace();
-                }
-                //unpin
-                currentPage.unpin();
-                boolean isInsertInternal = false, stackNeed = true;
-                Page parent = null;
-                long parentNum = 0;
-                while (!isInsertInternal) {
-                    if (stackNeed) {
-                        if (pageStack.size() > 0) {
-                            parentNum = pageStack.pop();
-                            parent = this.pageStorage.get(parentNum);
-                            //pin
-                            parent.pin();
-                        } else {
-                            Page root = this.pageStorage.get(rootNum);
-                            //pin
-                            root.pin();
-                            if (getPageType(root) == PageType.LEAF) {
-                                long rawPageNum0 = this.getRawPageNum();
-                                Page rawPage0 = this.pageStorage.get(rawPageNum0);
-                                //pin
-                                rawPage0.pin();
-
-                                try {
-                                    rawPage0.writeData(root.getDataBytes());
-                                } catch (PageException pageException) {
-                                    //flush
-                                    try {
-                                        rawPage.flush();
-                                        rawPage0.flush();
-                                    } catch (FileException fileException) {
-                                        fileException.printStackTrace();
-                                    }
-                                    //unpin
-                                    rawPage.unpin();
-                                    rawPage0.unpin();
-                                    root.unpin();
-                                    pageException.printStackTrace();
-                                }
-
-                                //unpin
-                                rawPage.unpin();
-                                rawPage0.unpin();
-                                root.unpin();
-                                initRootAsInternal(newKey, rawPageNum0, rawPageNum);
-                            } else {
-
-                                try {
-                                    insertInternalItem(root, getMaxKey(rawPage), splitPageNum, rawPageNum, newKey);
-                                    //flesh
-                                    try {
-                                        rawPage.flush();
-                                        root.flush();
-                                    } catch (FileException fileException) {
-                                        fileException.printStackTrace();
-                                    }
-                                    //unpin
-                                    rawPage.unpin();
-                                    root.unpin();
-                                } catch (PageFullException pageFullException) {
-                                    long rawPageNum0 = this.getRawPageNum();
-                                    Page rawPage0 = this.pageStorage.get(rawPageNum0);
-                                    long rawPageNum1 = this.getRawPageNum();
-                                    Page rawPage1 = this.pageStorage.get(rawPageNum1);
-                                    try {
-                                        rawPage0.writeData(root.getDataBytes());
-                                    } catch (PageException pageException) {
-                                        //unpin
-                                        root.unpin();
-                                        rawPage0.unpin();
-                                        rawPage1.unpin();
-                                        rawPage.unpin();
-                                        pageException.printStackTrace();
-                                    }
+                long rawPageNum0 = this.getRawPageNum();
+                Page rawPage0 = this.pageStorage.get(rawPageNum0);
+                long parentOldKey = getMaxKey(parent);
+                newKey = insertFullInternal(parent, rawPage0, rawPageNum0, oldKey, pageNum, rawPageNum, newKey);
+                release(rawPage0);
+                releaseTop(latched, latchedNums);
+                oldKey = parentOldKey;
+                pageNum = parentNum;
+                rawPageNum = rawPageNum0;
+            }
+        }
+    }
 
-                                    newKey = insertFullInternal(rawPage0, rawPage1, rawPageNum1, getMaxKey(rawPage), splitPageNum, rawPageNum, newKey);
-                                    //flush
-                                    try {
-                                        rawPage0.flush();
-                                        rawPage1.flush();
-                                        rawPage.flush();
-                                    } catch (FileException fileException) {
-                                        fileException.printStackTrace();
-                                    }
-                                    //unpin
-                                    rawPage0.unpin();
-                                    rawPage1.unpin();
-                                    rawPage.unpin();
-                                    root.unpin();
-                                    initRootAsInternal(newKey, rawPageNum0, rawPageNum1);
-                                } catch (ItemInNextPageException itemInNextPageException) {
-                                    //unpin
-                                    rawPage.unpin();
-                                    root.unpin();
-                                    itemInNextPageException.printStackTrace();
-                                }
+    /**
+     * 写操作在同一层右移：先对右侧页加独占锁，再释放当前页，祖先页的锁不变
+     *
+     * @param latched     已加独占锁的页，栈顶为当前页
+     * @param latchedNums 与latched对应的页号
+     * @param pageNum     右侧页的页号
+     * @return 右侧页，已加独占锁
+     */
+    private Page moveRightExclusive(Deque<Page> latched, Deque<Long> latchedNums, long pageNum) {
+        Page to = this.pageStorage.get(pageNum);
+        to.latchExclusive();
+        releaseTop(latched, latchedNums);
+        latched.push(to);
+        latchedNums.push(pageNum);
+        return to;
+    }
 
-                            }
-                            isInsertInternal = true;
-                            isInsert = true;
-                            continue;
-                        }
-                    } else {
-                        stackNeed = true;
-                    }
+    private void releaseTop(Deque<Page> latched, Deque<Long> latchedNums) {
+        latchedNums.pop();
+        Page page = latched.pop();
+        page.unlatchExclusive();
+        release(page);
+    }
 
-                    try {
-                        insertInternalItem(parent, getMaxKey(rawPage), splitPageNum, rawPageNum, newKey);
-                        isInsertInternal = true;
-                        isInsert = true;
-                        //unpin
-                        parent.unpin();
-                        rawPage.unpin();
-                    } catch (PageFullException ee) {
-                        long rawPageNum0 = this.getRawPageNum();
-                        Page rawPage0 = this.pageStorage.get(rawPageNum0);
-                        //pin
-                        rawPage0.pin();
-                        newKey = insertFullInternal(parent, rawPage0, rawPageNum0, getMaxKey(rawPage), splitPageNum, rawPageNum, newKey);
-                        rawPageNum = rawPageNum0;
-                        //flush
-                        try {
-                            rawPage.flush();
-                            parent.flush();
-                            rawPage0.flush();
-                        } catch (FileException fileException) {
-                            fileException.printStackTrace();
-                        }
-                        //unpin
-                        rawPage.unpin();
-                        parent.unpin();
-                        rawPage = rawPage0;
-                        splitPageNum = parentNum;
-                    } catch (ItemInNextPageException ee) {
-                        //unpin
-                        parent.unpin();
-                        parent = this.pageStorage.get(ee.getNextPageNum());
-                        parent.pin();
-                        stackNeed = false;
-                    }
+    private void releaseAll(Deque<Page> latched) {
+        while (!latched.isEmpty()) {
+            Page page = latched.pop();
+            page.unlatchExclusive();
+            release(page);
+        }
+    }
 
-                }
-            }
+    /**
+     * 写回并unpin页
+     */
+    private void release(Page page) {
+        //flush
+        try {
+            page.flush();
+        } catch (FileException e) {
+            e.printStackTrace();
+        }
+        //unpin
+        page.unpin();
+    }
 
+    private void copyPage(Page from, Page to) {
+        try {
+            to.writeData(from.getDataBytes());
+        } catch (PageException e) {
+            e.printStackTrace();
         }
     }
 
     @Override
-    synchronized public List<Long> query(long keyHash) {
+    public List<Long> query(long keyHash) {
         Page currentPage = this.pageStorage.get(rootNum);
-        //pin
-        currentPage.pin();
+        currentPage.latchShared();
         long nextPageNum = 0;
         while (getPageType(currentPage) != PageType.LEAF) {
             try {
                 nextPageNum = queryFirstInternalItem(currentPage, keyHash);
             } catch (ItemInNextPageException e) {
-                //unpin
-                currentPage.unpin();
-                currentPage = this.pageStorage.get(e.getNextPageNum());
-                //pin
-                currentPage.pin();
+                currentPage = moveShared(currentPage, e.getNextPageNum());
                 continue;
             }
-            //unpin
-            currentPage.unpin();
-            currentPage = this.pageStorage.get(nextPageNum);
-            //pin
-            currentPage.pin();
+            currentPage = moveShared(currentPage, nextPageNum);
         }
         int pos = 0;
         while (true) {
@@ -325,12 +282,7 @@ public class BPlusTreeIndex implements Index {
                 pos = queryKeyPos(currentPage, keyHash);
                 break;
             } catch (ItemInNextPageException e) {
-                var nextPageNum0 = getPageNextPage(currentPage);
-                //unpin
-                currentPage.unpin();
-                currentPage = this.pageStorage.get(nextPageNum0);
-                //pin
-                currentPage.pin();
+                currentPage = moveShared(currentPage, getPageNextPage(currentPage));
             }
         }
         List<Long> res = new LinkedList<>();
@@ -338,12 +290,7 @@ public class BPlusTreeIndex implements Index {
         while (true) {
             if (pos >= getPageItemNum(currentPage)) {
                 pos = 0;
-                var nextPageNum0 = getPageNextPage(currentPage);
-                //unpin
-                currentPage.unpin();
-                currentPage = this.pageStorage.get(nextPageNum0);
-                //pin
-                currentPage.pin();
+                currentPage = moveShared(currentPage, getPageNextPage(currentPage));
             }
             long key = getKeyByPosition(currentPage, pos);
             if (key == keyHash) {
@@ -355,32 +302,24 @@ public class BPlusTreeIndex implements Index {
             pos++;
         }
         //unpin
+        currentPage.unlatchShared();
         currentPage.unpin();
         return res;
     }
 
     @Override
-    synchronized public Iterator<Pair> findFirst(long dataHash) {
+    public Iterator<Pair> findFirst(long dataHash) {
         Page currentPage = this.pageStorage.get(rootNum);
-        //pin
-        currentPage.pin();
+        currentPage.latchShared();
         long nextPageNum = 0;
         while (getPageType(currentPage) != PageType.LEAF) {
             try {
                 nextPageNum = queryFirstInternalItem(currentPage, dataHash);
             } catch (ItemInNextPageException e) {
-                //unpin
-                currentPage.unpin();
-                currentPage = this.pageStorage.get(e.getNextPageNum());
-                //pin
-                currentPage.pin();
+                currentPage = moveShared(currentPage, e.getNextPageNum());
                 continue;
             }
-            //unpin
-            currentPage.unpin();
-            currentPage = this.pageStorage.get(nextPageNum);
-            //pin
-            currentPage.pin();
+            currentPage = moveShared(currentPage, nextPageNum);
         }
         int position = 0;
         while (true) {
@@ -388,41 +327,28 @@ public class BPlusTreeIndex implements Index {
                 position = queryKeyPos(currentPage, dataHash);
                 break;
             } catch (ItemInNextPageException e) {
-                //unpin
-                currentPage.unpin();
-                currentPage = this.pageStorage.get(e.getNextPageNum());
-                //pin
-                currentPage.pin();
-                continue;
+                currentPage = moveShared(currentPage, e.getNextPageNum());
             }
         }
         Iterator res = new BPlusTreeIterator(this, currentPage, position);
+        currentPage.unlatchShared();
         currentPage.unpin();
         return res;
     }
 
     @Override
-    synchronized public Iterator<Pair> findUpperbound(long dataHash) {
+    public Iterator<Pair> findUpperbound(long dataHash) {
         Page currentPage = this.pageStorage.get(rootNum);
-        //pin
-        currentPage.pin();
+        currentPage.latchShared();
         long nextPageNum = 0;
         while (getPageType(currentPage) != PageType.LEAF) {
             try {
                 nextPageNum = queryUpperboundInternal(currentPage, dataHash);
             } catch (ItemInNextPageException e) {
-                //unpin
-                currentPage.unpin();
-                currentPage = this.pageStorage.get(e.getNextPageNum());
-                //pin
-                currentPage.pin();
+                currentPage = moveShared(currentPage, e.getNextPageNum());
                 continue;
             }
-            //unpin
-            currentPage.unpin();
-            currentPage = this.pageStorage.get(nextPageNum);
-            //pin
-            currentPage.pin();
+            currentPage = moveShared(currentPage, nextPageNum);
         }
         int position = 0;
         while (true) {
@@ -430,37 +356,49 @@ public class BPlusTreeIndex implements Index {
                 position = queryUpperboundKeyPos(currentPage, dataHash);
                 break;
             } catch (ItemInNextPageException e) {
-                //unpin
-                currentPage.unpin();
-                currentPage = this.pageStorage.get(e.getNextPageNum());
-                //pin
-                currentPage.pin();
+                currentPage = moveShared(currentPage, e.getNextPageNum());
             }
         }
         Iterator res = new BPlusTreeIterator(this, currentPage, position);
+        currentPage.unlatchShared();
         currentPage.unpin();
         return res;
     }
 
     @Override
-    synchronized public Iterator<Pair> findFirst() {
+    public Iterator<Pair> findFirst() {
         Page currentPage = this.pageStorage.get(rootNum);
-        //pin
-        currentPage.pin();
+        currentPage.latchShared();
         long nextPageNum = 0;
         while (getPageType(currentPage) != PageType.LEAF) {
             nextPageNum = getMinChild(currentPage);
-            //unpin
-            currentPage.unpin();
-            currentPage = this.pageStorage.get(nextPageNum);
-            //pin
-            currentPage.pin();
+            currentPage = moveShared(currentPage, nextPageNum);
         }
         Iterator res = new BPlusTreeIterator(this, currentPage, 0);
+        currentPage.unlatchShared();
         currentPage.unpin();
         return res;
     }
 
+    /**
+     * 读操作从一页移到另一页：先释放当前页的共享锁并unpin，再获取下一页并加共享锁
+     * <p>
+     * 读操作同一时刻只锁住一页。两页之间若下一页发生了分裂，要找的条目会被分到右侧的页中，
+     * 此时通过页的最大key发现并沿下一页指针右移即可，因此不需要锁住父页
+     *
+     * @param from    当前页，已被pin并加共享锁
+     * @param pageNum 下一页的页号
+     * @return 下一页，已被pin并加共享锁
+     */
+    private Page moveShared(Page from, long pageNum) {
+        from.unlatchShared();
+        //unpin
+        from.unpin();
+        Page to = this.pageStorage.get(pageNum);
+        to.latchShared();
+        return to;
+    }
+
     /**
      * 用于Internal节点找到最小的儿子，服务于findFirst()
      *
@@ -468,7 +406,7 @@ public class BPlusTreeIndex implements Index {
      * @return
      */
     private long getMinChild(Page page) {
-        return ByteUtil.bytes2Long(ByteUtil.subByte(page.getDataBytes(), BPlusTreeIndex.PAGE_BEGIN_POSTION + 8, 8));
+        return page.getLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + 8);
     }
 
     /**
@@ -533,15 +471,17 @@ public class BPlusTreeIndex implements Index {
     }
 
     /**
-     * 获取一个新页，并元页总页数自动加一
+     * 获取一个新页，优先重用页存储中已回收的页，否则元页总页数自动加一
      *
      * @return 新页的页号
      * @throws PageTypeException
      */
     private long getRawPageNum() {
+        long reused = this.pageStorage.reusePage();
+        if (reused >= 0) {
+            return reused;
+        }
         Page page = this.pageStorage.get(0);
-        //pin
-        page.pin();
         if (getPageType(page) != PageType.META) {
             try {
                 throw new PageTypeException(2);
@@ -552,13 +492,14 @@ public class BPlusTreeIndex implements Index {
                 throw new RuntimeException();
             }
         }
-        long res = ByteUtil.bytes2Long(ByteUtil.subByte(page.getDataBytes(), 4, 8));
-        byte[] bs = ByteUtil.long2Bytes(res + 1);
+        page.latchExclusive();
+        long res = page.getLong(4);
         try {
-            page.patchData(4, bs);
+            page.putLong(4, res + 1);
         } catch (PageException e) {
             e.printStackTrace();
         } finally {
+            page.unlatchExclusive();
             //unpin
             page.unpin();
         }
@@ -567,35 +508,26 @@ public class BPlusTreeIndex implements Index {
 
     /**
      * 将根，从LEAF节点变为INTERNAL节点
+     * <p>
+     * 根的页号固定，在原地由LEAF变为INTERNAL，调用方需持有根的独占锁，变更期间读操作不能看到中间状态
      *
+     * @param page       根
      * @param minKey     通过minKey初始化根节点
      * @param minPageNum 小于minKey的页的页号
      * @param maxPageNum 大于minKey的页的页号
      */
-    private void initRootAsInternal(long minKey, long minPageNum, long maxPageNum) {
-        //pin
-        Page page = this.pageStorage.get(rootNum);
-        page.pin();
+    private void initRootAsInternal(Page page, long minKey, long minPageNum, long maxPageNum) {
         setPageType(page, PageType.INTERNAL);
         setPageItemNum(page, 2);
         setMaxKey(page, Long.MAX_VALUE);
-        byte[] inserted;
+        setPageNextPage(page, 0);
         try {
-            inserted = ByteUtil.byteMerger(ByteUtil.long2Bytes(minKey), ByteUtil.long2Bytes(minPageNum));
-            page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION, inserted);
-            inserted = ByteUtil.byteMerger(ByteUtil.long2Bytes(Long.MAX_VALUE), ByteUtil.long2Bytes(maxPageNum));
-            page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + 16, inserted);
+            page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION, minKey);
+            page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + 8, minPageNum);
+            page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + 16, Long.MAX_VALUE);
+            page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + 24, maxPageNum);
         } catch (PageException e) {
             e.printStackTrace();
-        } finally {
-            //flush
-            try {
-                page.flush();
-            } catch (FileException e) {
-                e.printStackTrace();
-            }
-            //unpin
-            page.unpin();
         }
     }
 
@@ -605,11 +537,12 @@ public class BPlusTreeIndex implements Index {
     private void initRootAsLeaf() {
         //pin
         Page page = this.pageStorage.get(rootNum);
-        page.pin();
+        page.latchExclusive();
         setPageType(page, PageType.LEAF);
         setPageItemNum(page, 0);
         setMaxKey(page, Long.MAX_VALUE);
         setPageNextPage(page, 0);
+        page.unlatchExclusive();
         //flush
         try {
             page.flush();
@@ -641,7 +574,7 @@ public class BPlusTreeIndex implements Index {
             throw new ItemInNextPageException(1, getPageNextPage(page));
         }
         int itemNum = getPageItemNum(page);
-        if (itemNum >= BPlusTreeIndex.MAX_PAGE_ITEM) {
+        if (itemNum >= this.maxPageItem) {
             throw new PageFullException(1);
         }
         int i = 0, j = itemNum;
@@ -666,7 +599,7 @@ public class BPlusTreeIndex implements Index {
             }
             low--;
         }
-        while (getKeyByPosition(page, high) == oldKey && !isFind && high <= (BPlusTreeIndex.MAX_PAGE_ITEM - 1)) {
+        while (getKeyByPosition(page, high) == oldKey && !isFind && high <= (this.maxPageItem - 1)) {
             if (getValByPosition(page, high) == oldPageNum) {
                 temp = high;
                 isFind = true;
@@ -679,15 +612,14 @@ public class BPlusTreeIndex implements Index {
         }
 
         try {
-            byte[] bytes = ByteUtil.long2Bytes(replacePageNum);
-            page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16 + 8, bytes);
+            page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16 + 8, replacePageNum);
             byte[] bs = new byte[16];
             for (int k = itemNum; k > temp; k--) {
-                System.arraycopy(page.getDataBytes(), BPlusTreeIndex.PAGE_BEGIN_POSTION + (k - 1) * 16, bs, 0, 16);
+                page.slice(BPlusTreeIndex.PAGE_BEGIN_POSTION + (k - 1) * 16, 16).get(bs);
                 page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + k * 16, bs);
             }
-            byte[] inserted = ByteUtil.byteMerger(ByteUtil.long2Bytes(newKey), ByteUtil.long2Bytes(oldPageNum));
-            page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16, inserted);
+            page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16, newKey);
+            page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16 + 8, oldPageNum);
         } catch (PageException e) {
             e.printStackTrace();
         }
@@ -723,7 +655,7 @@ public class BPlusTreeIndex implements Index {
         setMaxKey(newPage, getMaxKey(page));
         setPageNextPage(newPage, getPageNextPage(page));
         setPageNextPage(page, newPageNum);
-        int i = 0, j = BPlusTreeIndex.MAX_PAGE_ITEM;
+        int i = 0, j = this.maxPageItem;
         int temp = (i + j) / 2;
         while (i < j) {
             if (getKeyByPosition(page, temp) > oldKey) {
@@ -745,7 +677,7 @@ public class BPlusTreeIndex implements Index {
             }
             low--;
         }
-        while (getKeyByPosition(page, high) == oldKey && !isFind && high <= (BPlusTreeIndex.MAX_PAGE_ITEM - 1)) {
+        while (getKeyByPosition(page, high) == oldKey && !isFind && high <= (this.maxPageItem - 1)) {
             if (getValByPosition(page, high) == oldPageNum) {
                 temp = high;
                 isFind = true;
@@ -763,47 +695,47 @@ public class BPlusTreeIndex implements Index {
         //先对半分
         byte[] bs = new byte[16];
         try {
-            for (int k = 0; k < BPlusTreeIndex.MAX_PAGE_ITEM / 2; k++) {
-                System.arraycopy(page.getDataBytes(), BPlusTreeIndex.PAGE_MID_POSTION + k * 16, bs, 0, 16);
+            for (int k = 0; k < this.maxPageItem / 2; k++) {
+                page.slice(this.pageMidPosition + k * 16, 16).get(bs);
                 newPage.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + k * 16, bs);
             }
         } catch (PageException e) {
             e.printStackTrace();
         }
         //在根据temp的取值情况分别处理
-        if (temp < (BPlusTreeIndex.MAX_PAGE_ITEM) / 2) {
+        if (temp < (this.maxPageItem) / 2) {
             try {
-                for (int k = BPlusTreeIndex.MAX_PAGE_ITEM / 2; k > temp; k--) {
-                    System.arraycopy(page.getDataBytes(), BPlusTreeIndex.PAGE_BEGIN_POSTION + (k - 1) * 16, bs, 0, 16);
+                for (int k = this.maxPageItem / 2; k > temp; k--) {
+                    page.slice(BPlusTreeIndex.PAGE_BEGIN_POSTION + (k - 1) * 16, 16).get(bs);
                     page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + k * 16, bs);
                 }
-                page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + (temp + 1) * 16 + 8, ByteUtil.long2Bytes(replacePageNum));
-                byte[] inserted = ByteUtil.byteMerger(ByteUtil.long2Bytes(newKey), ByteUtil.long2Bytes(oldPageNum));
-                page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16, inserted);
+                page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + (temp + 1) * 16 + 8, replacePageNum);
+                page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16, newKey);
+                page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16 + 8, oldPageNum);
             } catch (PageException e) {
                 e.printStackTrace();
             }
-            setPageItemNum(page, BPlusTreeIndex.MAX_PAGE_ITEM / 2 + 1);
-            setPageItemNum(newPage, BPlusTreeIndex.MAX_PAGE_ITEM / 2);
-            long newKey0 = getKeyByPosition(page, BPlusTreeIndex.MAX_PAGE_ITEM / 2);
+            setPageItemNum(page, this.maxPageItem / 2 + 1);
+            setPageItemNum(newPage, this.maxPageItem / 2);
+            long newKey0 = getKeyByPosition(page, this.maxPageItem / 2);
             setMaxKey(page, newKey0);
             return newKey0;
         } else {
-            temp = temp - BPlusTreeIndex.MAX_PAGE_ITEM / 2;
+            temp = temp - this.maxPageItem / 2;
             try {
-                for (int k = BPlusTreeIndex.MAX_PAGE_ITEM / 2; k > temp; k--) {
-                    System.arraycopy(newPage.getDataBytes(), BPlusTreeIndex.PAGE_BEGIN_POSTION + (k - 1) * 16, bs, 0, 16);
+                for (int k = this.maxPageItem / 2; k > temp; k--) {
+                    newPage.slice(BPlusTreeIndex.PAGE_BEGIN_POSTION + (k - 1) * 16, 16).get(bs);
                     newPage.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + k * 16, bs);
                 }
-                newPage.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + (temp + 1) * 16 + 8, ByteUtil.long2Bytes(replacePageNum));
-                byte[] inserted = ByteUtil.byteMerger(ByteUtil.long2Bytes(newKey), ByteUtil.long2Bytes(oldPageNum));
-                newPage.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16, inserted);
+                newPage.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + (temp + 1) * 16 + 8, replacePageNum);
+                newPage.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16, newKey);
+                newPage.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16 + 8, oldPageNum);
             } catch (PageException e) {
                 e.printStackTrace();
             }
-            setPageItemNum(page, BPlusTreeIndex.MAX_PAGE_ITEM / 2);
-            setPageItemNum(newPage, BPlusTreeIndex.MAX_PAGE_ITEM / 2 + 1);
-            long newKey0 = getKeyByPosition(page, BPlusTreeIndex.MAX_PAGE_ITEM / 2 - 1);
+            setPageItemNum(page, this.maxPageItem / 2);
+            setPageItemNum(newPage, this.maxPageItem / 2 + 1);
+            long newKey0 = getKeyByPosition(page, this.maxPageItem / 2 - 1);
             setMaxKey(page, newKey0);
             return newKey0;
         }
@@ -886,7 +818,7 @@ public class BPlusTreeIndex implements Index {
             throw new ItemInNextPageException(1, getPageNextPage(page));
         }
         int itemNum = getPageItemNum(page);
-        if (itemNum >= BPlusTreeIndex.MAX_PAGE_ITEM) {
+        if (itemNum >= this.maxPageItem) {
             throw new PageFullException(1);
         }
         int i = 0, j = itemNum;
@@ -907,11 +839,11 @@ public class BPlusTreeIndex implements Index {
         try {
             byte[] bs = new byte[16];
             for (int k = itemNum; k > temp; k--) {
-                System.arraycopy(page.getDataBytes(), BPlusTreeIndex.PAGE_BEGIN_POSTION + (k - 1) * 16, bs, 0, 16);
+                page.slice(BPlusTreeIndex.PAGE_BEGIN_POSTION + (k - 1) * 16, 16).get(bs);
                 page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + k * 16, bs);
             }
-            byte[] inserted = ByteUtil.byteMerger(ByteUtil.long2Bytes(keyHash), ByteUtil.long2Bytes(uuid));
-            page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16, inserted);
+            page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16, keyHash);
+            page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16 + 8, uuid);
         } catch (PageException e) {
             e.printStackTrace();
         }
@@ -937,11 +869,11 @@ public class BPlusTreeIndex implements Index {
             }
         }
         setPageType(newPage, PageType.LEAF);
-//        setPageItemNum(newPage,(BPlusTreeIndex.MAX_PAGE_ITEM + 1)/2);
+//        setPageItemNum(newPage,(this.maxPageItem + 1)/2);
         setMaxKey(newPage, getMaxKey(page));
         setPageNextPage(newPage, getPageNextPage(page));
         setPageNextPage(page, newPageNum);
-        int i = 0, j = BPlusTreeIndex.MAX_PAGE_ITEM;
+        int i = 0, j = this.maxPageItem;
         int temp = (i + j) / 2;
         while (i < j) {
             if (getKeyByPosition(page, temp) > keyHash) {
@@ -953,40 +885,40 @@ public class BPlusTreeIndex implements Index {
             }
             temp = (i + j) / 2;
         }
-        if (temp < (BPlusTreeIndex.MAX_PAGE_ITEM) / 2) {
+        if (temp < (this.maxPageItem) / 2) {
             byte[] bs = new byte[16];
             try {
-                for (int k = 0; k < BPlusTreeIndex.MAX_PAGE_ITEM / 2; k++) {
-                    System.arraycopy(page.getDataBytes(), BPlusTreeIndex.PAGE_MID_POSTION + k * 16, bs, 0, 16);
+                for (int k = 0; k < this.maxPageItem / 2; k++) {
+                    page.slice(this.pageMidPosition + k * 16, 16).get(bs);
                     newPage.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + k * 16, bs);
                 }
             } catch (PageException e) {
                 e.printStackTrace();
             }
             try {
-                for (int k = BPlusTreeIndex.MAX_PAGE_ITEM / 2; k > temp; k--) {
-                    System.arraycopy(page.getDataBytes(), BPlusTreeIndex.PAGE_BEGIN_POSTION + (k - 1) * 16, bs, 0, 16);
+                for (int k = this.maxPageItem / 2; k > temp; k--) {
+                    page.slice(BPlusTreeIndex.PAGE_BEGIN_POSTION + (k - 1) * 16, 16).get(bs);
                     page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + k * 16, bs);
                 }
-                byte[] inserted = ByteUtil.byteMerger(ByteUtil.long2Bytes(keyHash), ByteUtil.long2Bytes(uuid));
-                page.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16, inserted);
+                page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16, keyHash);
+                page.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + temp * 16 + 8, uuid);
             } catch (PageException e) {
                 e.printStackTrace();
             }
-            setPageItemNum(newPage, BPlusTreeIndex.MAX_PAGE_ITEM / 2);
-            setPageItemNum(page, BPlusTreeIndex.MAX_PAGE_ITEM / 2 + 1);
-            long newKey = ByteUtil.bytes2Long(ByteUtil.subByte(page.getDataBytes(), BPlusTreeIndex.PAGE_MID_POSTION, 8));
+            setPageItemNum(newPage, this.maxPageItem / 2);
+            setPageItemNum(page, this.maxPageItem / 2 + 1);
+            long newKey = page.getLong(this.pageMidPosition);
             setMaxKey(page, newKey);
             return newKey;
         } else {
             byte[] bs = new byte[16];
             try {
                 boolean isInsert = false;
-                for (int k = 0; k < BPlusTreeIndex.MAX_PAGE_ITEM / 2; k++) {
-                    System.arraycopy(page.getDataBytes(), BPlusTreeIndex.PAGE_MID_POSTION + k * 16, bs, 0, 16);
-                    if (keyHash < ByteUtil.bytes2Long(ByteUtil.subByte(bs, 0, 8)) && !isInsert) {
-                        byte[] inserted = ByteUtil.byteMerger(ByteUtil.long2Bytes(keyHash), ByteUtil.long2Bytes(uuid));
-                        newPage.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + k * 16, inserted);
+                for (int k = 0; k < this.maxPageItem / 2; k++) {
+                    page.slice(this.pageMidPosition + k * 16, 16).get(bs);
+                    if (keyHash < page.getLong(this.pageMidPosition + k * 16) && !isInsert) {
+                        newPage.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + k * 16, keyHash);
+                        newPage.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + k * 16 + 8, uuid);
                         isInsert = true;
                     }
                     if (isInsert) {
@@ -996,15 +928,15 @@ public class BPlusTreeIndex implements Index {
                     }
                 }
                 if (!isInsert) {
-                    byte[] inserted = ByteUtil.byteMerger(ByteUtil.long2Bytes(keyHash), ByteUtil.long2Bytes(uuid));
-                    newPage.patchData(BPlusTreeIndex.PAGE_BEGIN_POSTION + BPlusTreeIndex.MAX_PAGE_ITEM / 2 * 16, inserted);
+                    newPage.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + this.maxPageItem / 2 * 16, keyHash);
+                    newPage.putLong(BPlusTreeIndex.PAGE_BEGIN_POSTION + this.maxPageItem / 2 * 16 + 8, uuid);
                 }
             } catch (PageException e) {
                 e.printStackTrace();
             }
-            setPageItemNum(newPage, BPlusTreeIndex.MAX_PAGE_ITEM / 2 + 1);
-            setPageItemNum(page, BPlusTreeIndex.MAX_PAGE_ITEM / 2);
-            long newKey = ByteUtil.bytes2Long(ByteUtil.subByte(page.getDataBytes(), BPlusTreeIndex.PAGE_MID_POSTION - 16, 8));
+            setPageItemNum(newPage, this.maxPageItem / 2 + 1);
+            setPageItemNum(page, this.maxPageItem / 2);
+            long newKey = page.getLong(this.pageMidPosition - 16);
             setMaxKey(page, newKey);
             return newKey;
         }
@@ -1019,12 +951,12 @@ public class BPlusTreeIndex implements Index {
      */
     private long getKeyByPosition(Page page, int position) {
         int pos = BPlusTreeIndex.PAGE_BEGIN_POSTION + 16 * position;
-        return ByteUtil.bytes2Long(ByteUtil.subByte(page.getDataBytes(), pos, 8));
+        return page.getLong(pos);
     }
 
     private long getValByPosition(Page page, int position) {
         int pos = BPlusTreeIndex.PAGE_BEGIN_POSTION + 16 * position + 8;
-        return ByteUtil.bytes2Long(ByteUtil.subByte(page.getDataBytes(), pos, 8));
+        return page.getLong(pos);
     }
 
     /**
@@ -1034,9 +966,8 @@ public class BPlusTreeIndex implements Index {
      * @param maxKey
      */
     private void setMaxKey(Page page, long maxKey) {
-        byte[] bs = ByteUtil.long2Bytes(maxKey);
         try {
-            page.patchData(16, bs);
+            page.putLong(16, maxKey);
         } catch (PageException e) {
             e.printStackTrace();
         }
@@ -1049,7 +980,7 @@ public class BPlusTreeIndex implements Index {
      * @return
      */
     private long getMaxKey(Page page) {
-        return ByteUtil.bytes2Long(ByteUtil.subByte(page.getDataBytes(), 16, 8));
+        return page.getLong(16);
     }
 
     /**
@@ -1059,9 +990,8 @@ public class BPlusTreeIndex implements Index {
      * @param itemNum
      */
     private void setPageItemNum(Page page, int itemNum) {
-        byte[] bs = ByteUtil.int2Bytes(itemNum);
         try {
-            page.patchData(4, bs);
+            page.putInt(4, itemNum);
         } catch (PageException e) {
             e.printStackTrace();
         }
@@ -1074,7 +1004,7 @@ public class BPlusTreeIndex implements Index {
      * @return
      */
     private int getPageItemNum(Page page) {
-        return ByteUtil.bytes2Int(ByteUtil.subByte(page.getDataBytes(), 4, 4));
+        return page.getInt(4);
     }
 
     /**
@@ -1084,9 +1014,8 @@ public class BPlusTreeIndex implements Index {
      * @param pageNum
      */
     private void setPageNextPage(Page page, long pageNum) {
-        byte[] bs = ByteUtil.long2Bytes(pageNum);
         try {
-            page.patchData(8, bs);
+            page.putLong(8, pageNum);
         } catch (PageException e) {
             e.printStackTrace();
         }
@@ -1097,7 +1026,7 @@ public class BPlusTreeIndex implements Index {
      * @return 返回下一页的页码
      */
     private long getPageNextPage(Page page) {
-        return ByteUtil.bytes2Long(ByteUtil.subByte(page.getDataBytes(), 8, 8));
+        return page.getLong(8);
     }
 
     /**
@@ -1105,10 +1034,8 @@ public class BPlusTreeIndex implements Index {
      * @param pageType 设置页的类型
      */
     private void setPageType(Page page, PageType pageType) {
-        int temp = pageType.ordinal();
-        byte[] bs = ByteUtil.int2Bytes(temp);
         try {
-            page.patchData(0, bs);
+            page.putInt(0, pageType.ordinal());
         } catch (PageException e) {
             e.printStackTrace();
         }
@@ -1119,7 +1046,7 @@ public class BPlusTreeIndex implements Index {
      * @return 页的类型，如果不存在对应页类型，则抛出异常
      */
     public PageType getPageType(Page page) {
-        int typeNum = ByteUtil.bytes2Int(ByteUtil.subByte(page.getDataBytes(), 0, 4));
+        int typeNum = page.getInt(0);
         if (typeNum == PageType.INTERNAL.ordinal()) {
             return PageType.INTERNAL;
         } else if (typeNum == PageType.LEAF.ordinal()) {
@@ -1141,6 +1068,14 @@ public class BPlusTreeIndex implements Index {
         int currentPosition;
         int currentPageItemNum;
         boolean isEnd = false;
+        /**
+         * 当前叶的页号，起始叶未知时为-1
+         */
+        long currentPageNum = -1;
+        /**
+         * 已提交预读的页号上界（不含）
+         */
+        long readAheadUntil = 0;
 
         public BPlusTreeIterator(BPlusTreeIndex bPlusTreeIndex, Page currentPage, int currentPosition) {
             this.bPlusTreeIndex = bPlusTreeIndex;
@@ -1149,48 +1084,70 @@ public class BPlusTreeIndex implements Index {
             currentPage.pin();
             this.currentPosition = currentPosition;
             this.currentPageItemNum = getPageItemNum(currentPage);
+            readAhead(getPageNextPage(currentPage));
+        }
+
+        /**
+         * 进入一个叶后预读后续的叶。叶分裂时新叶通常分配在文件末尾，顺序插入建成的树中后继叶多紧随当前叶，
+         * 因此下一叶页号恰为当前页号加一时按顺序预读READ_AHEAD_SIZE页，否则只预读下一叶
+         */
+        private void readAhead(long nextPageNum) {
+            if (nextPageNum == 0 || nextPageNum < readAheadUntil) {
+                return;
+            }
+            if (currentPageNum >= 0 && nextPageNum == currentPageNum + 1) {
+                pageStorage.prefetch(nextPageNum, PageManager.READ_AHEAD_SIZE);
+                readAheadUntil = nextPageNum + PageManager.READ_AHEAD_SIZE;
+            } else {
+                pageStorage.prefetch(new long[]{nextPageNum});
+            }
         }
 
         @Override
         public boolean hasNext() {
-            synchronized (bPlusTreeIndex) {
+            currentPage.latchShared();
+            try {
+                currentPageItemNum = getPageItemNum(currentPage);
                 if (currentPageItemNum > currentPosition) {
                     return true;
                 } else {
                     return !isEnd && getPageNextPage(currentPage) != 0;
                 }
+            } finally {
+                currentPage.unlatchShared();
             }
         }
 
         @Override
         public Pair next() {
-            synchronized (bPlusTreeIndex) {
-                if (currentPageItemNum > currentPosition) {
-                    Pair res = new Pair(getKeyByPosition(currentPage, currentPosition), getValByPosition(currentPage, currentPosition));
-                    currentPosition++;
-                    return res;
-                } else {
-                    long nextPageNum = getPageNextPage(currentPage);
-                    if (nextPageNum == 0) {
-                        if (isEnd) {
-                            isEnd = true;
-                            //unpin
-                            currentPage.unpin();
-                        }
-                        return null;
-                    } else {
-                        log.debug("nextPage, num = {}", nextPageNum);
+            currentPage.latchShared();
+            currentPageItemNum = getPageItemNum(currentPage);
+            if (currentPageItemNum > currentPosition) {
+                Pair res = new Pair(getKeyByPosition(currentPage, currentPosition), getValByPosition(currentPage, currentPosition));
+                currentPosition++;
+                currentPage.unlatchShared();
+                return res;
+            } else {
+                long nextPageNum = getPageNextPage(currentPage);
+                if (nextPageNum == 0) {
+                    currentPage.unlatchShared();
+                    if (isEnd) {
+                        isEnd = true;
                         //unpin
                         currentPage.unpin();
-                        currentPage = this.bPlusTreeIndex.pageStorage.get(nextPageNum);
-                        //pin
-                        currentPage.pin();
-                        currentPageItemNum = getPageItemNum(currentPage);
-                        currentPosition = 0;
-                        Pair res = new Pair(getKeyByPosition(currentPage, currentPosition), getValByPosition(currentPage, currentPosition));
-                        currentPosition++;
-                        return res;
                     }
+                    return null;
+                } else {
+                    log.debug("nextPage, num = {}", nextPageNum);
+                    currentPage = this.bPlusTreeIndex.moveShared(currentPage, nextPageNum);
+                    currentPageNum = nextPageNum;
+                    currentPageItemNum = getPageItemNum(currentPage);
+                    currentPosition = 0;
+                    readAhead(getPageNextPage(currentPage));
+                    Pair res = new Pair(getKeyByPosition(currentPage, currentPosition), getValByPosition(currentPage, currentPosition));
+                    currentPosition++;
+                    currentPage.unlatchShared();
+                    return res;
                 }
             }
         }
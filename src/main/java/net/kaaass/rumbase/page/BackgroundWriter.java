@@ -0,0 +1,124 @@
+package net.kaaass.rumbase.page;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台写回
+ * <p>
+ * 后台线程每隔WRITER_INTERVAL毫秒按(页存储, 页号)的顺序写回至多WRITER_MAX_PAGES个未被钉住的脏页，
+ * 下一轮从上一轮结束的位置继续，使换出时大多数页已经是干净的，前台不必同步写回。
+ * 另外每隔CHECKPOINT_INTERVAL毫秒做一次检查点，写回所有页存储的脏页并同步到磁盘，并保存缓冲中的热点页。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+class BackgroundWriter {
+
+    private static BackgroundWriter instance = null;
+
+    /**
+     * 启动后台写回，已启动时不做任何事
+     */
+    static synchronized void start() {
+        if (instance != null) {
+            return;
+        }
+        instance = new BackgroundWriter();
+    }
+
+    /**
+     * 停止后台写回，并等待正在进行的写回结束
+     */
+    static synchronized void stop() {
+        if (instance == null) {
+            return;
+        }
+        instance.executor.shutdown();
+        try {
+            instance.executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        instance = null;
+    }
+
+    private BackgroundWriter() {
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "page-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (PageManager.WRITER_INTERVAL > 0) {
+            this.executor.scheduleWithFixedDelay(this::writeDirtyPages,
+                    PageManager.WRITER_INTERVAL, PageManager.WRITER_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+        if (PageManager.CHECKPOINT_INTERVAL > 0) {
+            this.executor.scheduleWithFixedDelay(this::checkpoint,
+                    PageManager.CHECKPOINT_INTERVAL, PageManager.CHECKPOINT_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 写回一轮脏页。正被加独占锁修改的页本轮跳过
+     */
+    private void writeDirtyPages() {
+        List<RumPage> pages = RumBuffer.getInstance().dirtyPages();
+        if (pages.isEmpty()) {
+            return;
+        }
+        pages.sort(ORDER);
+        // 从上一轮写到的位置之后开始
+        int start = 0;
+        while (start < pages.size() && compare(pages.get(start), this.lastStorageId, this.lastPageId) <= 0) {
+            start++;
+        }
+        int count = Math.min(PageManager.WRITER_MAX_PAGES, pages.size());
+        for (int i = 0; i < count; i++) {
+            RumPage page = pages.get((start + i) % pages.size());
+            if (!page.tryLatchShared()) {
+                continue;
+            }
+            try {
+                page.flush();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                page.unlatchShared();
+            }
+            this.lastStorageId = page.storage.getId();
+            this.lastPageId = page.pageId();
+        }
+    }
+
+    /**
+     * 检查点：写回所有脏页并同步到磁盘，同时保存缓冲中的热点页
+     */
+    private void checkpoint() {
+        try {
+            PageManager.flush();
+            PageManager.dumpBuffer();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int compare(RumPage page, int storageId, long pageId) {
+        int c = Integer.compare(page.storage.getId(), storageId);
+        return c != 0 ? c : Long.compare(page.pageId(), pageId);
+    }
+
+    private static final Comparator<RumPage> ORDER = Comparator
+            .comparingInt((RumPage page) -> page.storage.getId())
+            .thenComparingLong(RumPage::pageId);
+
+    private final ScheduledExecutorService executor;
+    /**
+     * 上一轮最后写回的页，仅由后台线程访问
+     */
+    private int lastStorageId = -1;
+    private long lastPageId = -1;
+}
@@ -0,0 +1,122 @@
+package net.kaaass.rumbase.page;
+
+import net.kaaass.rumbase.page.exception.FileException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * 缓冲热点页的保存与恢复
+ * <p>
+ * 保存时按置换器的顺序（越热的页越靠前）记录缓冲中每页的文件与页号，先写入临时文件再替换，避免留下写了一半的文件。
+ * 恢复时取前BUFFER_SIZE项，按文件分组、页号排序后交给读页调度器在后台装入，相邻的页会合并读取。
+ * </p>
+ * <p>
+ * 文件格式：int魔数；int文件数；每个文件路径（UTF）；int页数；每页int文件下标与long页号。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+class BufferDump {
+
+    /**
+     * 保存缓冲中的页
+     *
+     * @param dumpFile 保存到的文件
+     * @throws IOException 写入失败
+     */
+    static void dump(String dumpFile) throws IOException {
+        List<RumPage> pages = RumBuffer.initialized() ? RumBuffer.getInstance().snapshot() : Collections.emptyList();
+        Map<String, Integer> fileIndex = new LinkedHashMap<>();
+        for (RumPage page : pages) {
+            fileIndex.putIfAbsent(page.storage.getFilepath(), fileIndex.size());
+        }
+        Path target = Paths.get(dumpFile);
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Path temp = Paths.get(dumpFile + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(fileIndex.size());
+            for (String filepath : fileIndex.keySet()) {
+                out.writeUTF(filepath);
+            }
+            out.writeInt(pages.size());
+            for (RumPage page : pages) {
+                out.writeInt(fileIndex.get(page.storage.getFilepath()));
+                out.writeLong(page.pageId());
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 在后台装入保存的页，不等待装入完成。已不存在的文件与超出文件范围的页会被跳过
+     *
+     * @param dumpFile 保存的文件
+     * @return 提交装入的页数
+     * @throws IOException 读取失败或文件格式不正确
+     */
+    static int load(String dumpFile) throws IOException {
+        if (!new File(dumpFile).exists()) {
+            return 0;
+        }
+        List<String> files = new ArrayList<>();
+        Map<Integer, List<Long>> pageIds = new TreeMap<>();
+        try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(dumpFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a buffer dump: " + dumpFile);
+            }
+            int fileNum = in.readInt();
+            for (int i = 0; i < fileNum; i++) {
+                files.add(in.readUTF());
+            }
+            int pageNum = Math.min(in.readInt(), PageManager.BUFFER_SIZE);
+            for (int i = 0; i < pageNum; i++) {
+                int file = in.readInt();
+                long pageId = in.readLong();
+                if (file < 0 || file >= fileNum) {
+                    throw new IOException("corrupted buffer dump: " + dumpFile);
+                }
+                pageIds.computeIfAbsent(file, k -> new ArrayList<>()).add(pageId);
+            }
+        }
+        int submitted = 0;
+        for (var entry : pageIds.entrySet()) {
+            String filepath = files.get(entry.getKey());
+            if (!new File(filepath).exists()) {
+                continue;
+            }
+            PageStorage storage;
+            try {
+                storage = PageManager.fromFile(filepath);
+            } catch (FileException e) {
+                e.printStackTrace();
+                continue;
+            }
+            if (!(storage instanceof RumPageStorage)) {
+                continue;
+            }
+            long pageCount = ((RumPageStorage) storage).getPageFile().pageCount();
+            long[] ids = entry.getValue().stream()
+                    .mapToLong(Long::longValue)
+                    .filter(id -> id >= 0 && id < pageCount)
+                    .sorted()
+                    .distinct()
+                    .toArray();
+            storage.getAll(ids).thenAccept(pages -> pages.forEach(Page::unpin));
+            submitted += ids.length;
+        }
+        return submitted;
+    }
+
+    /**
+     * 魔数"RBDP"
+     */
+    private static final int MAGIC = 0x52424450;
+}
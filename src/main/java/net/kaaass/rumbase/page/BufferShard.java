@@ -0,0 +1,306 @@
+package net.kaaass.rumbase.page;
+
+import net.kaaass.rumbase.page.exception.BufferException;
+import net.kaaass.rumbase.page.exception.FileException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓冲分片
+ * <p>
+ * 缓冲池按(页存储, 页号)的哈希分为若干分片，每个分片拥有独立的堆外帧区、空闲帧栈、页表与置换器，
+ * 不同分片之间的装入与换出互不影响。帧号为分片内的下标，即RumPage中的offset。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+class BufferShard {
+
+    BufferShard(int capacity) {
+        this.capacity = capacity;
+        // 帧按页大小对齐，以满足直接I/O对缓冲地址的要求
+        ByteBuffer arena = ByteBuffer.allocateDirect((capacity + 1) * PageManager.PAGE_SIZE)
+                .alignedSlice(PageManager.PAGE_SIZE);
+        this.frames = new ByteBuffer[capacity];
+        for (int i = 0; i < capacity; i++) {
+            arena.limit((i + 1) * PageManager.PAGE_SIZE);
+            arena.position(i * PageManager.PAGE_SIZE);
+            this.frames[i] = arena.slice();
+        }
+        this.freeFrames = new FreeFrameStack(capacity);
+        this.replacer = Replacer.of(PageManager.REPLACE_POLICY, capacity);
+    }
+
+    /**
+     * 获取页，先查页表，未命中时从文件装入。同一页的并发未命中只由一个线程装入
+     * <p>
+     * 返回的页已被钉住，调用方使用完毕后需要unpin。查到的页在钉住之前可能已被换出，此时重新获取
+     * </p>
+     *
+     * @param storage 页所属的页存储
+     * @param pageId  页号
+     * @return 页对象
+     */
+    RumPage get(RumPageStorage storage, long pageId) throws FileException, BufferException {
+        while (true) {
+            RumPage page = find(storage, pageId);
+            if (page.tryPin()) {
+                return page;
+            }
+            // 页正在被换出，等待换出线程将其移出页表
+            Thread.yield();
+        }
+    }
+
+    /**
+     * 查找或装入页，不钉住
+     */
+    private RumPage find(RumPageStorage storage, long pageId) throws FileException, BufferException {
+        PageKey key = new PageKey(storage.getId(), pageId);
+        RumPage cached = this.pageTable.get(key);
+        if (cached != null) {
+            this.replacer.hit(cached);
+            return cached;
+        }
+        CompletableFuture<RumPage> future = new CompletableFuture<>();
+        CompletableFuture<RumPage> inflight = this.loading.putIfAbsent(key, future);
+        if (inflight != null) {
+            try {
+                return inflight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof FileException) {
+                    throw (FileException) e.getCause();
+                }
+                throw new BufferException(1);
+            }
+        }
+        return finishLoad(storage, pageId, future, null);
+    }
+
+    /**
+     * 登记由调用方装入某页。页已缓冲或正在由其他线程装入时不登记
+     * <p>
+     * 登记成功后其他线程对该页的获取都会等待返回的future，调用方必须随后以同一future调用finishLoad完成装入。
+     * 登记时页不在页表中，因此在登记之前从文件读出的数据不会比缓冲中的更旧。
+     * </p>
+     *
+     * @param storage 页所属的页存储
+     * @param pageId  页号
+     * @return 登记的future，未登记时返回null
+     */
+    CompletableFuture<RumPage> claim(RumPageStorage storage, long pageId) {
+        PageKey key = new PageKey(storage.getId(), pageId);
+        if (this.pageTable.containsKey(key)) {
+            return null;
+        }
+        CompletableFuture<RumPage> future = new CompletableFuture<>();
+        if (this.loading.putIfAbsent(key, future) != null) {
+            return null;
+        }
+        RumPage cached = this.pageTable.get(key);
+        if (cached != null) {
+            future.complete(cached);
+            this.loading.remove(key, future);
+            return null;
+        }
+        return future;
+    }
+
+    /**
+     * 完成已登记的装入
+     *
+     * @param storage 页所属的页存储
+     * @param pageId  页号
+     * @param future  登记的future
+     * @param source  页数据，为null时从文件读取
+     * @return 页对象
+     */
+    RumPage finishLoad(RumPageStorage storage, long pageId, CompletableFuture<RumPage> future, ByteBuffer source)
+            throws FileException, BufferException {
+        PageKey key = new PageKey(storage.getId(), pageId);
+        try {
+            // 查页表与登记装入之间，其他线程可能已经完成了装入
+            RumPage page = this.pageTable.get(key);
+            if (page == null) {
+                page = load(storage, pageId, source);
+                this.pageTable.put(key, page);
+                this.replacer.insert(page);
+            }
+            future.complete(page);
+            return page;
+        } catch (FileException | BufferException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.loading.remove(key, future);
+        }
+    }
+
+    /**
+     * 分配一帧并装入页数据，source为null时从文件读入
+     */
+    private RumPage load(RumPageStorage storage, long pageId, ByteBuffer source) throws FileException, BufferException {
+        int frame = allocateFrame();
+        ByteBuffer data = this.frames[frame];
+        if (source != null) {
+            data.duplicate().put(source.duplicate());
+        } else {
+            try {
+                storage.getPageFile().read(pageId, data.duplicate());
+            } catch (FileException e) {
+                this.freeFrames.push(frame);
+                throw e;
+            }
+        }
+        RumPage page = new RumPage(data, pageId, storage.getFilepath(), frame);
+        page.storage = storage;
+        return page;
+    }
+
+    /**
+     * 取一个空闲帧，没有空闲帧时换出一页
+     */
+    private int allocateFrame() throws FileException, BufferException {
+        while (true) {
+            int frame = this.freeFrames.pop();
+            if (frame >= 0) {
+                return frame;
+            }
+            RumPage victim = this.replacer.victim();
+            if (victim == null) {
+                throw new BufferException(1);
+            }
+            // 选出受害者之后页仍可能被其他线程钉住，此时放回置换器另选
+            boolean evicted;
+            try {
+                evicted = victim.evict();
+            } catch (FileException e) {
+                this.replacer.restore(victim);
+                throw e;
+            }
+            if (!evicted) {
+                this.replacer.restore(victim);
+                continue;
+            }
+            // 页可能已在关闭页存储时被换出，由从页表中移除该页的一方回收帧
+            if (this.pageTable.remove(new PageKey(victim.storage.getId(), victim.pageId()), victim)) {
+                this.freeFrames.push(victim.offset);
+            }
+        }
+    }
+
+    /**
+     * 页是否已在分片中
+     */
+    boolean contains(RumPageStorage storage, long pageId) {
+        return this.pageTable.containsKey(new PageKey(storage.getId(), pageId));
+    }
+
+    /**
+     * 列出分片中属于某页存储的页
+     *
+     * @param storage 页存储
+     * @return 页列表
+     */
+    List<RumPage> pagesOf(RumPageStorage storage) {
+        List<RumPage> pages = new ArrayList<>();
+        for (RumPage page : this.pageTable.values()) {
+            if (page.storage == storage) {
+                pages.add(page);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * 换出分片中属于某页存储的页并回收其帧，被钉住的页不换出
+     *
+     * @param storage 页存储
+     * @throws FileException 写回失败
+     */
+    void evictAll(RumPageStorage storage) throws FileException {
+        for (RumPage page : pagesOf(storage)) {
+            if (!page.evict()) {
+                continue;
+            }
+            this.replacer.remove(page);
+            if (this.pageTable.remove(new PageKey(storage.getId(), page.pageId()), page)) {
+                this.freeFrames.push(page.offset);
+            }
+        }
+    }
+
+    /**
+     * 列出分片中未被钉住的脏页
+     *
+     * @return 页列表
+     */
+    List<RumPage> dirtyPages() {
+        List<RumPage> pages = new ArrayList<>();
+        for (RumPage page : this.pageTable.values()) {
+            if (page.dirty() && !page.pinned()) {
+                pages.add(page);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * 按置换器的顺序列出分片中的页，越热的页越靠前
+     *
+     * @return 页列表
+     */
+    List<RumPage> snapshot() {
+        return this.replacer.snapshot();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 页表的键，由页存储编号与页号组成
+     */
+    static class PageKey {
+        private final int storageId;
+        private final long pageId;
+
+        PageKey(int storageId, long pageId) {
+            this.storageId = storageId;
+            this.pageId = pageId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PageKey)) {
+                return false;
+            }
+            PageKey that = (PageKey) o;
+            return storageId == that.storageId && pageId == that.pageId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * storageId + Long.hashCode(pageId);
+        }
+    }
+
+    private final int capacity;
+    /**
+     * 每帧对应堆外帧区中的一段
+     */
+    private final ByteBuffer[] frames;
+    private final FreeFrameStack freeFrames;
+    private final Replacer replacer;
+    private final Map<PageKey, RumPage> pageTable = new ConcurrentHashMap<>();
+    private final Map<PageKey, CompletableFuture<RumPage>> loading = new ConcurrentHashMap<>();
+}
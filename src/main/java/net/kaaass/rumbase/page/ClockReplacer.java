@@ -0,0 +1,117 @@
+package net.kaaass.rumbase.page;
+
+import net.kaaass.rumbase.page.exception.BufferException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * CLOCK置换算法
+ * <p>
+ * 以帧数组代替链表，每帧带一个原子访问位。命中只需置访问位，不加锁；换出时时钟指针扫过帧数组，
+ * 清除访问位并选出第一个未被访问、未被钉住的页。扫描最多进行两圈，第三圈忽略访问位，
+ * 因此只有在所有页都被钉住时才会失败。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+public class ClockReplacer implements Replacer {
+
+    public ClockReplacer(int capacity) {
+        this.capacity = capacity;
+        this.frames = new AtomicReferenceArray<>(capacity);
+        this.referenced = new AtomicIntegerArray(capacity);
+    }
+
+    @Override
+    public void insert(RumPage page) {
+        int frame = page.offset;
+        // 先设置访问位再放入帧，否则并发的换出可能看到新页与上一页留下的访问位，立即将新页换出
+        this.referenced.set(frame, 1);
+        if (this.frames.getAndSet(frame, page) == null) {
+            this.size.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void hit(RumPage page) {
+        int frame = page.offset;
+        // 访问位已置位时不再写，避免热点页的缓存行在核间反复失效
+        if (this.referenced.get(frame) == 0 && this.frames.get(frame) == page) {
+            this.referenced.set(frame, 1);
+        }
+    }
+
+    @Override
+    public RumPage victim() throws BufferException {
+        if (this.size.get() == 0) {
+            return null;
+        }
+        for (int step = 0; step < SWEEP_ROUND * this.capacity; step++) {
+            int frame = Math.floorMod(this.hand.getAndIncrement(), this.capacity);
+            RumPage page = this.frames.get(frame);
+            if (page == null || page.pinned()) {
+                continue;
+            }
+            // 前两圈给予被访问过的页第二次机会
+            if (step < (SWEEP_ROUND - 1) * this.capacity && this.referenced.getAndSet(frame, 0) == 1) {
+                continue;
+            }
+            if (this.frames.compareAndSet(frame, page, null)) {
+                this.size.decrementAndGet();
+                return page;
+            }
+        }
+        throw new BufferException(2);
+    }
+
+    @Override
+    public void remove(RumPage page) {
+        if (this.frames.compareAndSet(page.offset, page, null)) {
+            this.size.decrementAndGet();
+        }
+    }
+
+    /**
+     * 访问位置位的页在前，其余的页按离时钟指针由远到近排列，即越晚被扫到的越靠前
+     */
+    @Override
+    public List<RumPage> snapshot() {
+        List<RumPage> referencedPages = new ArrayList<>();
+        List<RumPage> others = new ArrayList<>();
+        int hand = this.hand.get();
+        for (int i = 1; i <= this.capacity; i++) {
+            int frame = Math.floorMod(hand - i, this.capacity);
+            RumPage page = this.frames.get(frame);
+            if (page == null) {
+                continue;
+            }
+            if (this.referenced.get(frame) == 1) {
+                referencedPages.add(page);
+            } else {
+                others.add(page);
+            }
+        }
+        referencedPages.addAll(others);
+        return referencedPages;
+    }
+
+    @Override
+    public int size() {
+        return this.size.get();
+    }
+
+    /**
+     * 换出时时钟指针最多扫描的圈数
+     */
+    private static final int SWEEP_ROUND = 3;
+
+    private final int capacity;
+    private final AtomicReferenceArray<RumPage> frames;
+    private final AtomicIntegerArray referenced;
+    private final AtomicInteger hand = new AtomicInteger(0);
+    private final AtomicInteger size = new AtomicInteger(0);
+}
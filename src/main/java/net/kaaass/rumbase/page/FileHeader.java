@@ -0,0 +1,68 @@
+package net.kaaass.rumbase.page;
+
+import net.kaaass.rumbase.page.exception.FileException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 文件元数据
+ * <p>
+ * 位于文件头第0页的开头：0处为魔数，4处为创建文件时的页大小。打开文件时检查页大小与PageManager.PAGE_SIZE一致，
+ * 不一致时拒绝打开。没有魔数的文件是在记录页大小之前创建的，页大小均为4KB，打开时补写元数据。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+class FileHeader {
+
+    /**
+     * 检查文件的页大小，新文件与旧文件补写元数据
+     *
+     * @param channel 页文件
+     * @throws FileException 读写失败，或文件的页大小与配置不符
+     */
+    static void check(FileChannel channel) throws FileException {
+        ByteBuffer header = ByteBuffer.allocate(SIZE);
+        try {
+            long position = 0;
+            while (header.hasRemaining()) {
+                int n = channel.read(header, position);
+                if (n < 0) {
+                    break;
+                }
+                position += n;
+            }
+            header.flip();
+            int pageSize;
+            if (header.remaining() == SIZE && header.getInt(0) == MAGIC) {
+                pageSize = header.getInt(4);
+            } else {
+                pageSize = channel.size() == 0 ? PageManager.PAGE_SIZE : LEGACY_PAGE_SIZE;
+                if (pageSize == PageManager.PAGE_SIZE) {
+                    ByteBuffer src = ByteBuffer.allocate(SIZE).putInt(MAGIC).putInt(pageSize);
+                    src.flip();
+                    while (src.hasRemaining()) {
+                        channel.write(src, src.position());
+                    }
+                }
+            }
+            if (pageSize != PageManager.PAGE_SIZE) {
+                throw new FileException(6);
+            }
+        } catch (IOException e) {
+            throw new FileException(5, e);
+        }
+    }
+
+    /**
+     * 魔数"RUMB"
+     */
+    private static final int MAGIC = 0x52554D42;
+    private static final int SIZE = 8;
+    /**
+     * 记录页大小之前的固定页大小
+     */
+    private static final int LEGACY_PAGE_SIZE = 4096;
+}
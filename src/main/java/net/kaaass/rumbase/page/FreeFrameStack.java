@@ -0,0 +1,73 @@
+package net.kaaass.rumbase.page;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 空闲帧栈
+ * <p>
+ * 无锁的Treiber栈，元素为帧号。栈顶与一个版本号打包在同一个long中（高32位为版本号，低32位为栈顶帧号加一），
+ * 每次修改版本号加一，以避免ABA问题。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+class FreeFrameStack {
+
+    /**
+     * 创建包含帧0到capacity-1的空闲帧栈
+     *
+     * @param capacity 帧数
+     */
+    FreeFrameStack(int capacity) {
+        this.next = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            this.next.set(i, i + 1 < capacity ? i + 1 : EMPTY);
+        }
+        this.head = new AtomicLong(capacity > 0 ? 1 : 0);
+    }
+
+    /**
+     * 取出一个空闲帧
+     *
+     * @return 帧号，若没有空闲帧则返回-1
+     */
+    int pop() {
+        while (true) {
+            long h = this.head.get();
+            int frame = (int) h - 1;
+            if (frame == EMPTY) {
+                return EMPTY;
+            }
+            int below = this.next.get(frame);
+            if (this.head.compareAndSet(h, pack(h, below))) {
+                return frame;
+            }
+        }
+    }
+
+    /**
+     * 归还一个空闲帧
+     *
+     * @param frame 帧号
+     */
+    void push(int frame) {
+        while (true) {
+            long h = this.head.get();
+            this.next.set(frame, (int) h - 1);
+            if (this.head.compareAndSet(h, pack(h, frame))) {
+                return;
+            }
+        }
+    }
+
+    private static long pack(long oldHead, int frame) {
+        long version = (oldHead >>> 32) + 1;
+        return (version << 32) | ((frame + 1) & 0xFFFFFFFFL);
+    }
+
+    private static final int EMPTY = -1;
+
+    private final AtomicIntegerArray next;
+    private final AtomicLong head;
+}
@@ -0,0 +1,111 @@
+package net.kaaass.rumbase.page;
+
+import net.kaaass.rumbase.page.exception.FileException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * 空闲页位图
+ * <p>
+ * 位图保存在文件头中：文件头第0页保留给文件元数据，第1页至第FILE_HEAD_SIZE-1页为位图，
+ * 第i位（第i/8字节的第i%8位）置位表示页i已被回收、可以重新分配。全零的位图表示没有回收的页，
+ * 因此已有的文件无需迁移。位图只覆盖前(FILE_HEAD_SIZE-1)*PAGE_SIZE*8页，超出范围的页回收时被忽略。
+ * </p>
+ * <p>
+ * 位图在打开文件时整体读入内存，每次修改立即写回对应的字节，随页存储的flush一起刷入磁盘。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+class FreePageMap {
+
+    /**
+     * 从文件头读入位图
+     *
+     * @param channel 页文件
+     * @throws FileException 读取失败
+     */
+    FreePageMap(FileChannel channel) throws FileException {
+        this.channel = channel;
+        this.capacity = (PageManager.FILE_HEAD_SIZE - 1) * PageManager.PAGE_SIZE * 8;
+        ByteBuffer bytes = ByteBuffer.allocate((int) (this.capacity / 8));
+        try {
+            long position = PageManager.PAGE_SIZE;
+            while (bytes.hasRemaining()) {
+                int n = channel.read(bytes, position);
+                if (n < 0) {
+                    break;
+                }
+                position += n;
+            }
+        } catch (IOException e) {
+            throw new FileException(5, e);
+        }
+        this.bits = BitSet.valueOf(bytes.array());
+    }
+
+    /**
+     * 标记页已回收
+     *
+     * @param pageId 页号
+     * @return 是否记入位图，页已回收或超出位图范围时返回false
+     * @throws FileException 写入失败
+     */
+    synchronized boolean free(long pageId) throws FileException {
+        if (pageId < 0 || pageId >= this.capacity || this.bits.get((int) pageId)) {
+            return false;
+        }
+        this.bits.set((int) pageId);
+        writeByte((int) (pageId / 8));
+        return true;
+    }
+
+    /**
+     * 取出一个已回收的页，优先取页号最小的页，使数据尽量集中在文件前部
+     *
+     * @return 页号，没有已回收的页时返回-1
+     * @throws FileException 写入失败
+     */
+    synchronized long allocate() throws FileException {
+        int pageId = this.bits.nextSetBit(0);
+        if (pageId < 0) {
+            return -1;
+        }
+        this.bits.clear(pageId);
+        writeByte(pageId / 8);
+        return pageId;
+    }
+
+    /**
+     * 已回收的页数
+     *
+     * @return 页数
+     */
+    synchronized int freeCount() {
+        return this.bits.cardinality();
+    }
+
+    private void writeByte(int index) throws FileException {
+        byte value = 0;
+        for (int i = 0; i < 8; i++) {
+            if (this.bits.get(index * 8 + i)) {
+                value |= 1 << i;
+            }
+        }
+        try {
+            this.channel.write(ByteBuffer.wrap(new byte[]{value}), PageManager.PAGE_SIZE + index);
+        } catch (IOException e) {
+            throw new FileException(2, e);
+        }
+    }
+
+    private final FileChannel channel;
+    /**
+     * 位图能记录的页数
+     */
+    private final long capacity;
+    private final BitSet bits;
+}
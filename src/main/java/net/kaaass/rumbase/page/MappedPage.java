@@ -0,0 +1,147 @@
+package net.kaaass.rumbase.page;
+
+import net.kaaass.rumbase.page.exception.FileException;
+import net.kaaass.rumbase.page.exception.PageException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 内存映射页
+ * <p>
+ * 页数据是文件映射中对应区域的视图，写入直接修改映射，由操作系统负责写回。
+ * 与RumPage相同，patchData本身不加锁，如果防止冲突需要在上层加锁。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+public class MappedPage implements Page {
+
+    MappedPage(ByteBuffer view, MappedByteBuffer segment) {
+        this.view = view;
+        this.segment = segment;
+    }
+
+    @Override
+    public byte[] getDataBytes() {
+        byte[] tmp = new byte[PageManager.PAGE_SIZE];
+        ByteBuffer src = this.view.duplicate();
+        src.position(0);
+        src.get(tmp);
+        return tmp;
+    }
+
+    @Override
+    public void patchData(int offset, byte[] data) throws PageException {
+        if (offset < 0 || offset + data.length > PageManager.PAGE_SIZE) {
+            throw new PageException(1);
+        }
+        ByteBuffer dst = this.view.duplicate();
+        dst.position(offset);
+        dst.put(data);
+    }
+
+    @Override
+    public int getInt(int offset) {
+        return this.view.getInt(offset);
+    }
+
+    @Override
+    public long getLong(int offset) {
+        return this.view.getLong(offset);
+    }
+
+    @Override
+    public void putInt(int offset, int value) throws PageException {
+        if (offset < 0 || offset + Integer.BYTES > PageManager.PAGE_SIZE) {
+            throw new PageException(1);
+        }
+        this.view.putInt(offset, value);
+    }
+
+    @Override
+    public void putLong(int offset, long value) throws PageException {
+        if (offset < 0 || offset + Long.BYTES > PageManager.PAGE_SIZE) {
+            throw new PageException(1);
+        }
+        this.view.putLong(offset, value);
+    }
+
+    @Override
+    public ByteBuffer slice(int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, PageManager.PAGE_SIZE);
+        ByteBuffer dup = this.view.duplicate();
+        dup.limit(offset + length);
+        dup.position(offset);
+        return dup.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 将页所在的映射段写回文件
+     */
+    @Override
+    public void flush() throws FileException {
+        this.segment.force();
+    }
+
+    @Override
+    public void latchShared() {
+        this.latch.readLock();
+    }
+
+    @Override
+    public void unlatchShared() {
+        this.latch.tryUnlockRead();
+    }
+
+    @Override
+    public void latchExclusive() {
+        this.latch.writeLock();
+    }
+
+    @Override
+    public void unlatchExclusive() {
+        this.latch.tryUnlockWrite();
+    }
+
+    @Override
+    public boolean tryLatchShared() {
+        return this.latch.tryReadLock() != 0;
+    }
+
+    @Override
+    public boolean tryLatchExclusive() {
+        return this.latch.tryWriteLock() != 0;
+    }
+
+    @Override
+    public long optimisticVersion() {
+        return this.latch.tryOptimisticRead();
+    }
+
+    @Override
+    public boolean validate(long version) {
+        return this.latch.validate(version);
+    }
+
+    @Override
+    public void pin() {
+        pinned.incrementAndGet();
+    }
+
+    @Override
+    public void unpin() {
+        pinned.decrementAndGet();
+    }
+
+    private final ByteBuffer view;
+    private final MappedByteBuffer segment;
+    /**
+     * 映射页不会被换出，钉住计数仅用于保持与缓冲页一致的使用规约
+     */
+    private final AtomicInteger pinned = new AtomicInteger(0);
+    private final StampedLock latch = new StampedLock();
+}
@@ -0,0 +1,147 @@
+package net.kaaass.rumbase.page;
+
+import net.kaaass.rumbase.page.exception.FileException;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 使用内存映射的页存储
+ * <p>
+ * 文件按段（MAP_SEGMENT_SIZE页）映射进内存，页对象只是映射中对应区域的视图，读写不经过RumBuffer，
+ * 也没有从文件到缓冲的拷贝，由操作系统的页缓存充当缓冲池。访问超出已映射范围的页时，按段扩展映射，
+ * 文件随映射一起增长。适合能完全放入内存、以读为主的表。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+public class MappedPageStorage implements PageStorage {
+
+    public MappedPageStorage(String filepath) throws FileException {
+        this.filepath = filepath;
+        try {
+            this.channel = FileChannel.open(Paths.get(filepath),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new FileException(3, e);
+        }
+        FileHeader.check(this.channel);
+        this.freePageMap = new FreePageMap(this.channel);
+    }
+
+    @Override
+    public Page get(long pageId) {
+        MappedPage cached = pageMap.get(pageId);
+        if (cached != null) {
+            cached.pin();
+            return cached;
+        }
+        long position = (PageManager.FILE_HEAD_SIZE + pageId) * PageManager.PAGE_SIZE;
+        long segmentBytes = (long) PageManager.MAP_SEGMENT_SIZE * PageManager.PAGE_SIZE;
+        try {
+            MappedByteBuffer segment = segment((int) (position / segmentBytes));
+            int offset = (int) (position % segmentBytes);
+            var view = segment.duplicate();
+            view.position(offset);
+            view.limit(offset + PageManager.PAGE_SIZE);
+            MappedPage page = new MappedPage(view.slice(), segment);
+            MappedPage old = pageMap.putIfAbsent(pageId, page);
+            page = old == null ? page : old;
+            page.pin();
+            return page;
+        } catch (FileException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public void freePage(long pageId) {
+        try {
+            this.freePageMap.free(pageId);
+        } catch (FileException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public long reusePage() {
+        try {
+            return this.freePageMap.allocate();
+        } catch (FileException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    /**
+     * 获取指定段的映射，若未映射则扩展映射
+     */
+    private MappedByteBuffer segment(int index) throws FileException {
+        MappedByteBuffer[] current = this.segments;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        synchronized (this) {
+            current = this.segments;
+            if (index >= current.length) {
+                current = Arrays.copyOf(current, index + 1);
+            }
+            if (current[index] == null) {
+                long segmentBytes = (long) PageManager.MAP_SEGMENT_SIZE * PageManager.PAGE_SIZE;
+                try {
+                    // 映射超出文件末尾时，文件会被扩展至映射的大小
+                    current[index] = this.channel.map(FileChannel.MapMode.READ_WRITE, index * segmentBytes, segmentBytes);
+                } catch (IOException e) {
+                    throw new FileException(3, e);
+                }
+            }
+            this.segments = current;
+            return current[index];
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (MappedByteBuffer segment : this.segments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        synchronized (this) {
+            this.pageMap.clear();
+            this.segments = new MappedByteBuffer[0];
+        }
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 已创建的页视图
+     */
+    private final Map<Long, MappedPage> pageMap = new ConcurrentHashMap<>();
+    /**
+     * 已映射的段，下标为段号。只在持有本对象锁时替换
+     */
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private final FileChannel channel;
+    private final String filepath;
+    /**
+     * 文件头中的空闲页位图
+     */
+    private final FreePageMap freePageMap;
+}
@@ -5,26 +5,24 @@ import net.kaaass.rumbase.page.exception.PageException;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * 单页管理
  * <p>
  * Page对象通过PageCache获得。获得的对象【不可以长期保存】（如保存在对象中作为对象的字段）。
- * 使用页面需要注意使用pin，以防止Page对象被提前回收。
+ * 获得的页已被pin住，使用完毕后需要unpin，以防止Page对象被提前回收或长期占用缓冲。
  * <pre>
  *     var page = pageCache.get(1);
- *     page.pin();
  *     // ...
  *     page.getData();
  *     // ...
- *     // 如果不pin，则此处page对象可能因为被淘汰失效
  *     page.patchData(2, patch);
  *     page.unpin();
  * <pre/>
  * 如果操作有错误风险（有可能发生不造成停机的错误），必须加上try-catch-finally
  * <pre>
  *     var page = pageCache.get(1);
- *     page.pin();
  *     try {
  *         page.getData();
  *         // ...
@@ -35,10 +33,6 @@ import java.io.InputStream;
  *         page.unpin(); // 重要：防止内存泄漏，必须在finally释放
  *     }
  * <pre/>
- * 若操作数量为1，不复用Page对象的情形，可以忽略。
- * <pre>
- *     pageCache.get(1).getData();
- * <pre/>
  *
  * @author XuanLaoYee
  */
@@ -81,12 +75,138 @@ public interface Page {
      */
     void patchData(int offset, byte[] data) throws PageException;
 
+    /**
+     * 读取页内指定位置的int，大端序
+     * <p>
+     * 缓冲页与映射页直接读取页所在内存，不复制页数据。默认实现基于getDataBytes，供其他实现兼容使用
+     *
+     * @param offset 页内偏移值，以字节为单位
+     * @return 读取的值
+     * @throws IndexOutOfBoundsException 若读取位置超出页的范围
+     */
+    default int getInt(int offset) {
+        return ByteBuffer.wrap(getDataBytes()).getInt(offset);
+    }
+
+    /**
+     * 读取页内指定位置的long，大端序
+     *
+     * @param offset 页内偏移值，以字节为单位
+     * @return 读取的值
+     * @throws IndexOutOfBoundsException 若读取位置超出页的范围
+     */
+    default long getLong(int offset) {
+        return ByteBuffer.wrap(getDataBytes()).getLong(offset);
+    }
+
+    /**
+     * 在页指定位置写入int，大端序
+     *
+     * @param offset 页内偏移值，以字节为单位
+     * @param value  待写入的值
+     * @throws PageException 若写入的数据超出页的范围则抛出异常
+     */
+    default void putInt(int offset, int value) throws PageException {
+        patchData(offset, ByteBuffer.allocate(Integer.BYTES).putInt(value).array());
+    }
+
+    /**
+     * 在页指定位置写入long，大端序
+     *
+     * @param offset 页内偏移值，以字节为单位
+     * @param value  待写入的值
+     * @throws PageException 若写入的数据超出页的范围则抛出异常
+     */
+    default void putLong(int offset, long value) throws PageException {
+        patchData(offset, ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+    }
+
+    /**
+     * 获得页内一段数据的只读视图
+     * <p>
+     * 视图与页共享内存，页被修改后视图中的内容也随之改变，因此只能在页被pin住期间使用。
+     * 写入请使用patchData或putInt、putLong，以便页被正确标记为脏页
+     *
+     * @param offset 页内偏移值，以字节为单位
+     * @param length 视图长度
+     * @return 只读的字节缓冲，位置为0，界限为length
+     * @throws IndexOutOfBoundsException 若视图超出页的范围
+     */
+    default ByteBuffer slice(int offset, int length) {
+        return ByteBuffer.wrap(getDataBytes(), offset, length).slice().asReadOnlyBuffer();
+    }
+
     void flush() throws FileException;
 
+    /**
+     * 对页加共享锁
+     * <p>
+     * 页锁保护页内数据的一致性，而pin只保证页不被换出。持有共享锁的线程可以并发读页，持有独占锁的线程可以修改页。
+     * 页锁不可重入，也不能由共享锁升级为独占锁。
+     * <p>
+     * 操作规约：必须先pin再加锁，解锁后再unpin，锁的持有时间应尽量短
+     */
+    void latchShared();
+
+    /**
+     * 释放页的共享锁
+     */
+    void unlatchShared();
+
+    /**
+     * 对页加独占锁
+     */
+    void latchExclusive();
+
+    /**
+     * 释放页的独占锁
+     */
+    void unlatchExclusive();
+
+    /**
+     * 尝试对页加共享锁，不等待
+     *
+     * @return 是否成功加锁
+     */
+    boolean tryLatchShared();
+
+    /**
+     * 尝试对页加独占锁，不等待
+     *
+     * @return 是否成功加锁
+     */
+    boolean tryLatchExclusive();
+
+    /**
+     * 开始一次乐观读，不加锁
+     * <p>
+     * 读取完成后需要使用validate检查版本号，校验失败说明读取期间页被修改过，读到的数据不可使用，
+     * 应当重试或改为加共享锁读取。乐观读期间读到的数据可能不一致，解析时需要防止越界
+     * <pre>
+     *     long version = page.optimisticVersion();
+     *     long value = page.getLong(8);
+     *     if (!page.validate(version)) {
+     *         page.latchShared();
+     *         // ...
+     *     }
+     * <pre/>
+     *
+     * @return 版本号，若页正被独占锁住则返回0
+     */
+    long optimisticVersion();
+
+    /**
+     * 检查乐观读的版本号是否仍然有效
+     *
+     * @param version optimisticVersion返回的版本号
+     * @return 自获取版本号以来页是否未被独占锁住过
+     */
+    boolean validate(long version);
+
     /**
      * 将页固定在内存中
      * <p>
-     * 操作规约：必须在系列操作之前使用pin，以防止页被回收
+     * 操作规约：从页存储获得的页已被固定，只有需要在unpin之后继续持有页时才再次pin
      */
     void pin();
 
@@ -0,0 +1,219 @@
+package net.kaaass.rumbase.page;
+
+import com.sun.nio.file.ExtendedOpenOption;
+import net.kaaass.rumbase.page.exception.FileException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 页文件
+ * <p>
+ * 每个页存储持有一个始终打开的FileChannel，页的读写均使用按位置的read/write，不移动文件指针，可被多个线程同时调用。
+ * 文件容量不足时按区（EXTENT_SIZE页）预分配并填零，避免逐页追加。
+ * </p>
+ * <p>
+ * 直接I/O模式下页的读写使用另一个以O_DIRECT打开的通道，绕过操作系统的页缓存。直接I/O要求读写的位置、长度与缓冲地址
+ * 都按块对齐，页与缓冲帧均按页大小对齐，因此只有页大小为文件系统块大小的整数倍时才启用。文件头与扩展文件的填零
+ * 不满足对齐要求，仍使用普通通道。文件系统不支持直接I/O时退化为普通模式。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+public class PageFile {
+
+    /**
+     * 打开页文件，若文件不存在则创建
+     *
+     * @param filepath 文件路径
+     * @throws FileException 文件打开失败
+     */
+    public PageFile(String filepath) throws FileException {
+        this(filepath, false);
+    }
+
+    /**
+     * 打开页文件，若文件不存在则创建
+     *
+     * @param filepath 文件路径
+     * @param direct   页的读写是否使用直接I/O
+     * @throws FileException 文件打开失败
+     */
+    public PageFile(String filepath, boolean direct) throws FileException {
+        this.filepath = filepath;
+        try {
+            this.channel = FileChannel.open(Paths.get(filepath),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileHeader.check(this.channel);
+            this.size = this.channel.size();
+        } catch (IOException e) {
+            throw new FileException(3, e);
+        }
+        this.dataChannel = direct ? openDirect(Paths.get(filepath)) : this.channel;
+    }
+
+    /**
+     * 以O_DIRECT打开文件，不支持时返回普通通道
+     */
+    private FileChannel openDirect(Path path) {
+        try {
+            long blockSize = Files.getFileStore(path).getBlockSize();
+            if (blockSize <= 0 || PageManager.PAGE_SIZE % blockSize != 0) {
+                return this.channel;
+            }
+            return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, ExtendedOpenOption.DIRECT);
+        } catch (IOException | UnsupportedOperationException e) {
+            return this.channel;
+        }
+    }
+
+    /**
+     * 读取一页数据，若页超出文件范围则先扩展文件
+     *
+     * @param pageId 页号
+     * @param dst    目标缓冲，读取其剩余部分
+     * @throws FileException 读取失败
+     */
+    public void read(long pageId, ByteBuffer dst) throws FileException {
+        long position = positionOf(pageId);
+        ensureSize(position + PageManager.PAGE_SIZE);
+        try {
+            while (dst.hasRemaining()) {
+                int n = this.dataChannel.read(dst, position);
+                if (n < 0) {
+                    throw new FileException(4);
+                }
+                position += n;
+            }
+        } catch (IOException e) {
+            throw new FileException(5, e);
+        }
+    }
+
+    /**
+     * 将数据写入一页
+     *
+     * @param pageId 页号
+     * @param src    待写入数据，写入其剩余部分
+     * @throws FileException 写入失败
+     */
+    public void write(long pageId, ByteBuffer src) throws FileException {
+        long position = positionOf(pageId);
+        ensureSize(position + src.remaining());
+        try {
+            while (src.hasRemaining()) {
+                position += this.dataChannel.write(src, position);
+            }
+        } catch (IOException e) {
+            throw new FileException(2, e);
+        }
+    }
+
+    /**
+     * 将已写入的数据刷入磁盘
+     *
+     * @throws FileException 写入失败
+     */
+    public void force() throws FileException {
+        try {
+            this.channel.force(false);
+        } catch (IOException e) {
+            throw new FileException(2, e);
+        }
+    }
+
+    /**
+     * 关闭文件
+     */
+    public void close() {
+        try {
+            if (this.dataChannel != this.channel) {
+                this.dataChannel.close();
+            }
+            this.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 文件中已分配的页数，不含文件头
+     *
+     * @return 页数
+     */
+    public long pageCount() {
+        return Math.max(0, this.size / PageManager.PAGE_SIZE - PageManager.FILE_HEAD_SIZE);
+    }
+
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * 页的读写是否绕过了操作系统的页缓存
+     *
+     * @return 是否使用直接I/O
+     */
+    public boolean isDirect() {
+        return this.dataChannel != this.channel;
+    }
+
+    public String getFilepath() {
+        return filepath;
+    }
+
+    /**
+     * 页在文件中的位置，文件会预留FILE_HEAD_SIZE页作为文件头
+     */
+    private static long positionOf(long pageId) {
+        return (PageManager.FILE_HEAD_SIZE + pageId) * (long) PageManager.PAGE_SIZE;
+    }
+
+    /**
+     * 保证文件至少有required字节，不足时按区扩展并填零
+     */
+    private void ensureSize(long required) throws FileException {
+        if (required <= this.size) {
+            return;
+        }
+        synchronized (this) {
+            if (required <= this.size) {
+                return;
+            }
+            long extent = (long) PageManager.EXTENT_SIZE * PageManager.PAGE_SIZE;
+            long newSize = (required + extent - 1) / extent * extent;
+            try {
+                long position = this.channel.size();
+                while (position < newSize) {
+                    ByteBuffer zeros = ZEROS.duplicate();
+                    zeros.limit((int) Math.min(zeros.capacity(), newSize - position));
+                    position += this.channel.write(zeros, position);
+                }
+            } catch (IOException e) {
+                throw new FileException(2, e);
+            }
+            this.size = newSize;
+        }
+    }
+
+    /**
+     * 扩展文件时写入的全零数据
+     */
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(64 * 1024);
+
+    private final String filepath;
+    private final FileChannel channel;
+    /**
+     * 页读写使用的通道，直接I/O模式下为以O_DIRECT打开的通道，否则与channel相同
+     */
+    private final FileChannel dataChannel;
+    /**
+     * 已知的文件大小，只在持有本对象锁时增长
+     */
+    private volatile long size;
+}
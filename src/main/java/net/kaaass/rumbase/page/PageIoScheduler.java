@@ -0,0 +1,237 @@
+package net.kaaass.rumbase.page;
+
+import net.kaaass.rumbase.page.exception.FileException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读页调度器
+ * <p>
+ * 异步读取与预读请求进入同一个队列，由IO_THREAD_NUM个守护线程处理。线程每次取出队列中积压的全部请求，
+ * 按(页存储, 页号)排序，将同一页存储中相邻的页（跨度不超过IO_MERGE_SIZE页）合并为一次文件读取，再逐页拷入缓冲帧。
+ * 合并读取的页事先在缓冲分片中登记装入，读取期间其他线程对这些页的获取会等待本次装入，因此不会装入过期数据。
+ * </p>
+ * <p>
+ * 预读请求只是提示，积压的预读页超过上限时直接丢弃；异步读取请求总会完成。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+class PageIoScheduler {
+
+    private static volatile PageIoScheduler instance = null;
+
+    static PageIoScheduler getInstance() {
+        if (instance == null) {
+            synchronized (PageIoScheduler.class) {
+                if (instance == null) {
+                    instance = new PageIoScheduler();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private PageIoScheduler() {
+        int threads = Math.max(1, PageManager.IO_THREAD_NUM);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::work, "page-io-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 异步读取一批页
+     *
+     * @param storage 页存储
+     * @param pageIds 页号列表
+     * @return 与页号一一对应的future
+     */
+    List<CompletableFuture<Page>> read(RumPageStorage storage, long[] pageIds) {
+        List<CompletableFuture<Page>> futures = new ArrayList<>(pageIds.length);
+        for (int i = 0; i < pageIds.length; i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        this.queue.add(new Request(storage, pageIds, futures));
+        return futures;
+    }
+
+    /**
+     * 提交预读，积压过多时丢弃
+     *
+     * @param storage 页存储
+     * @param pageIds 页号列表
+     */
+    void prefetch(RumPageStorage storage, long[] pageIds) {
+        if (this.pendingPrefetch.addAndGet(pageIds.length) > MAX_PENDING_PREFETCH) {
+            this.pendingPrefetch.addAndGet(-pageIds.length);
+            return;
+        }
+        this.queue.add(new Request(storage, pageIds, null));
+    }
+
+    private void work() {
+        List<Request> batch = new ArrayList<>();
+        while (true) {
+            batch.clear();
+            try {
+                batch.add(this.queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            this.queue.drainTo(batch);
+            try {
+                serve(batch);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 处理一批请求，同一页存储中相邻的页合并读取
+     */
+    private void serve(List<Request> batch) {
+        List<Entry> entries = new ArrayList<>();
+        for (Request request : batch) {
+            if (request.futures == null) {
+                this.pendingPrefetch.addAndGet(-request.pageIds.length);
+            }
+            for (int i = 0; i < request.pageIds.length; i++) {
+                entries.add(new Entry(request.storage, request.pageIds[i],
+                        request.futures == null ? null : request.futures.get(i)));
+            }
+        }
+        entries.sort(Comparator.comparingInt((Entry e) -> e.storage.getId()).thenComparingLong(e -> e.pageId));
+        int start = 0;
+        for (int i = 1; i <= entries.size(); i++) {
+            if (i == entries.size() || !adjacent(entries.get(start), entries.get(i - 1), entries.get(i))) {
+                serveRun(entries.subList(start, i));
+                start = i;
+            }
+        }
+    }
+
+    /**
+     * next能否与从first开始、到last结束的一段合并读取
+     */
+    private static boolean adjacent(Entry first, Entry last, Entry next) {
+        return next.storage == first.storage
+                && next.pageId <= last.pageId + 1
+                && next.pageId - first.pageId < PageManager.IO_MERGE_SIZE;
+    }
+
+    /**
+     * 读取一段相邻的页。先登记并装入需要从文件读取的页，再获取其余的页，
+     * 避免在持有登记时等待其他线程的装入
+     */
+    private void serveRun(List<Entry> run) {
+        var buffer = RumBuffer.getInstance();
+        RumPageStorage storage = run.get(0).storage;
+        long pageCount = storage.getPageFile().pageCount();
+        // 登记文件范围内的页，超出文件的页由普通的获取扩展文件
+        List<Entry> claimed = new ArrayList<>();
+        List<CompletableFuture<RumPage>> claims = new ArrayList<>();
+        long lastClaimed = -1;
+        for (Entry entry : run) {
+            if (entry.pageId == lastClaimed || entry.pageId < 0 || entry.pageId >= pageCount) {
+                continue;
+            }
+            CompletableFuture<RumPage> claim = buffer.claim(storage, entry.pageId);
+            if (claim != null) {
+                claimed.add(entry);
+                claims.add(claim);
+                lastClaimed = entry.pageId;
+            }
+        }
+        ByteBuffer data = null;
+        long first = claimed.isEmpty() ? 0 : claimed.get(0).pageId;
+        if (claimed.size() > 1) {
+            long last = claimed.get(claimed.size() - 1).pageId;
+            int size = (int) (last - first + 1) * PageManager.PAGE_SIZE;
+            if (storage.getPageFile().isDirect()) {
+                // 直接I/O要求缓冲地址对齐，不能读入堆内缓冲
+                data = ByteBuffer.allocateDirect(size + PageManager.PAGE_SIZE).alignedSlice(PageManager.PAGE_SIZE);
+                data.limit(size);
+            } else {
+                data = ByteBuffer.allocate(size);
+            }
+            try {
+                storage.getPageFile().read(first, data.duplicate());
+            } catch (FileException | RuntimeException e) {
+                // 合并读取失败时逐页读取
+                data = null;
+            }
+        }
+        for (int i = 0; i < claimed.size(); i++) {
+            long pageId = claimed.get(i).pageId;
+            ByteBuffer source = null;
+            if (data != null) {
+                source = data.duplicate();
+                source.position((int) (pageId - first) * PageManager.PAGE_SIZE);
+                source.limit(source.position() + PageManager.PAGE_SIZE);
+            }
+            try {
+                buffer.finishLoad(storage, pageId, claims.get(i), source);
+            } catch (Exception ignore) {
+                // 装入失败时，下面的获取会重新尝试并将错误返回给请求方
+            }
+        }
+        for (Entry entry : run) {
+            if (entry.future == null) {
+                continue;
+            }
+            try {
+                entry.future.complete(buffer.get(storage, entry.pageId));
+            } catch (Exception e) {
+                entry.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 一次提交的请求，futures为null表示预读
+     */
+    private static class Request {
+        final RumPageStorage storage;
+        final long[] pageIds;
+        final List<CompletableFuture<Page>> futures;
+
+        Request(RumPageStorage storage, long[] pageIds, List<CompletableFuture<Page>> futures) {
+            this.storage = storage;
+            this.pageIds = pageIds;
+            this.futures = futures;
+        }
+    }
+
+    /**
+     * 请求中的一页
+     */
+    private static class Entry {
+        final RumPageStorage storage;
+        final long pageId;
+        final CompletableFuture<Page> future;
+
+        Entry(RumPageStorage storage, long pageId, CompletableFuture<Page> future) {
+            this.storage = storage;
+            this.pageId = pageId;
+            this.future = future;
+        }
+    }
+
+    /**
+     * 积压的预读页数上限
+     */
+    private static final int MAX_PENDING_PREFETCH = 1024;
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger pendingPrefetch = new AtomicInteger(0);
+}
@@ -1,18 +1,61 @@
 package net.kaaass.rumbase.page;
 
 import net.kaaass.rumbase.page.exception.FileException;
+import net.kaaass.rumbase.page.exception.PageException;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author XuanLaoYee
  */
 public class PageManager {
-    public static int PAGE_SIZE = 1024 * 4; // 页面大小是4KB
-    public static long FILE_HEAD_SIZE = 5; // 文件头留5页
-    public static int BUFFER_SIZE = 1000; //缓冲大小，单位是页，页的大小不可以超过524287
+    public static int PAGE_SIZE = 1024 * 4; // 页面大小默认4KB，可通过configure修改
+    public static long FILE_HEAD_SIZE = 5; // 文件头留5页，第0页为文件元数据，其余为空闲页位图
+    public static int EXTENT_SIZE = 64; // 文件按区扩展，单位是页
+    public static int BUFFER_SIZE = 1000; //缓冲大小，单位是页
+    public static int BUFFER_SHARD_NUM = Runtime.getRuntime().availableProcessors(); // 缓冲分片数
     public static int BYTE_BUFFER_SIZE = 1024 * 4 * BUFFER_SIZE;
+    public static int MAP_SEGMENT_SIZE = 1024 * 4; // 内存映射每段的大小，单位是页
+    public static PageStorage.Mode STORAGE_MODE = PageStorage.Mode.BUFFERED; // 默认的页存储实现
+    public static Replacer.Policy REPLACE_POLICY = Replacer.Policy.CLOCK; // 缓冲置换策略，扫描较多时可选TWO_QUEUE
+    public static long WRITER_INTERVAL = 200; // 后台写回的间隔，单位是毫秒，0表示不做后台写回
+    public static int WRITER_MAX_PAGES = 64; // 后台每轮最多写回的页数，与间隔一起决定写回速率
+    public static long CHECKPOINT_INTERVAL = 60 * 1000; // 检查点的间隔，单位是毫秒，0表示不做周期检查点
+    public static int READ_AHEAD_SIZE = 16; // 顺序扫描时预读的页数
+    public static int IO_THREAD_NUM = 4; // 后台读页的线程数
+    public static int IO_MERGE_SIZE = 32; // 相邻页合并为一次读取时的最大页数
+    public static String BUFFER_DUMP_FILE = "data/buffer_pool.dump"; // 保存缓冲热点页的文件，随检查点更新，null表示不保存
+
+    public static final int MIN_PAGE_SIZE = 1024 * 4; // 最小页大小
+    public static final int MAX_PAGE_SIZE = 1024 * 64; // 最大页大小
+
+    /**
+     * 设置页大小与缓冲大小，需要在打开任何页存储之前调用。页大小会记录在之后创建的每个文件中
+     *
+     * @param pageSize   页大小，4KB至64KB之间的2的幂
+     * @param bufferSize 缓冲大小，单位是页
+     * @throws PageException 参数不合法，或已经有页存储被打开
+     */
+    public static synchronized void configure(int pageSize, int bufferSize) throws PageException {
+        if (pageSize < MIN_PAGE_SIZE || pageSize > MAX_PAGE_SIZE || Integer.bitCount(pageSize) != 1 || bufferSize <= 0) {
+            throw new PageException(2);
+        }
+        if (!storages.isEmpty() || RumBuffer.initialized()) {
+            throw new PageException(3);
+        }
+        PAGE_SIZE = pageSize;
+        BUFFER_SIZE = bufferSize;
+        BYTE_BUFFER_SIZE = (int) Math.min(Integer.MAX_VALUE, (long) PAGE_SIZE * BUFFER_SIZE);
+    }
 
     /**
      * 取数据库文件生成文件管理的对象
@@ -22,13 +65,87 @@ public class PageManager {
      * @throws FileException 若文件不存在则创建，创建过程中出现错误会抛出错误
      */
     public static PageStorage fromFile(String filepath) throws FileException {
-        PageStorage storage = new RumPageStorage(filepath);
+        return fromFile(filepath, STORAGE_MODE);
+    }
+
+    /**
+     * 取数据库文件，以指定的实现方式生成文件管理的对象
+     *
+     * @param filepath 每个表文件路径
+     * @param mode     页存储的实现方式
+     * @return
+     * @throws FileException 若文件不存在则创建，创建过程中出现错误会抛出错误
+     */
+    public static synchronized PageStorage fromFile(String filepath, PageStorage.Mode mode) throws FileException {
+        // 同一文件只对应一个页存储，否则会在缓冲中各有一份互不可见的副本
+        Path path = Paths.get(filepath).toAbsolutePath().normalize();
+        OpenedFile opened = OPENED_FILES.get(path);
+        if (opened != null) {
+            if (Objects.equals(opened.fileKey, fileKey(path))) {
+                return opened.storage;
+            }
+            // 文件已被删除或替换，旧的页存储不再对应该路径，关闭它以释放文件与缓冲
+            storages.remove(opened.storage);
+            opened.storage.close();
+        }
+        PageStorage storage;
+        if (mode == PageStorage.Mode.MAPPED) {
+            storage = new MappedPageStorage(filepath);
+        } else if (mode == PageStorage.Mode.DIRECT) {
+            storage = new RumPageStorage(filepath, true);
+        } else {
+            storage = new RumPageStorage(filepath);
+        }
+        OPENED_FILES.put(path, new OpenedFile(storage, fileKey(path)));
         storages.add(storage);
         return storage;
     }
 
     /**
-     * 取数据库文件生成文件管理的对象
+     * 文件的唯一标识，文件不存在时返回一个不与任何标识相等的对象
+     */
+    private static Object fileKey(Path path) {
+        try {
+            Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            return key == null ? path : key;
+        } catch (IOException e) {
+            return new Object();
+        }
+    }
+
+    /**
+     * 保存缓冲中的热点页，重启后可以通过loadBufferDump恢复
+     */
+    public static void dumpBuffer() {
+        if (BUFFER_DUMP_FILE == null) {
+            return;
+        }
+        try {
+            BufferDump.dump(BUFFER_DUMP_FILE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 在后台装入上次保存的热点页，不等待装入完成
+     *
+     * @return 提交装入的页数
+     */
+    public static int loadBufferDump() {
+        if (BUFFER_DUMP_FILE == null) {
+            return 0;
+        }
+        try {
+            return BufferDump.load(BUFFER_DUMP_FILE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+
+    /**
+     * 将所有页存储的脏页写回并同步到磁盘
      */
     public static void flush() {
         for (PageStorage storage : storages) {
@@ -36,5 +153,40 @@ public class PageManager {
         }
     }
 
-    public static List<PageStorage> storages = new ArrayList<>();
+    /**
+     * 启动后台写回与周期检查点
+     */
+    public static void startBackgroundWriter() {
+        BackgroundWriter.start();
+    }
+
+    /**
+     * 停止后台写回与周期检查点
+     */
+    public static void stopBackgroundWriter() {
+        BackgroundWriter.stop();
+    }
+
+    /**
+     * 后台检查点会并发遍历，因此使用写时复制的列表
+     */
+    public static List<PageStorage> storages = new CopyOnWriteArrayList<>();
+
+    /**
+     * 已打开的文件，键为规范化的绝对路径
+     */
+    private static final Map<Path, OpenedFile> OPENED_FILES = new HashMap<>();
+
+    private static class OpenedFile {
+        private final PageStorage storage;
+        /**
+         * 打开时文件的唯一标识，用于发现文件被删除或替换
+         */
+        private final Object fileKey;
+
+        OpenedFile(PageStorage storage, Object fileKey) {
+            this.storage = storage;
+            this.fileKey = fileKey;
+        }
+    }
 }
@@ -1,5 +1,9 @@
 package net.kaaass.rumbase.page;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 用于管理一系列连续页的存储对象，隐藏任何关于存储的物理细节
  *
@@ -7,16 +11,140 @@ package net.kaaass.rumbase.page;
  */
 public interface PageStorage {
 
+    /**
+     * 页存储的实现方式
+     */
+    enum Mode {
+        /**
+         * 页装入RumBuffer缓冲，由置换器管理
+         */
+        BUFFERED,
+        /**
+         * 文件映射进内存，由操作系统的页缓存充当缓冲
+         */
+        MAPPED,
+        /**
+         * 与BUFFERED相同，但页的读写绕过操作系统的页缓存（O_DIRECT），内存只由RumBuffer占用。
+         * 文件系统不支持时退化为BUFFERED
+         */
+        DIRECT
+    }
+
     /**
      * 获取该页存储中的某一页
+     * <p>
+     * 返回的页已被钉住，使用完毕后需要unpin
      *
      * @param pageId 页号
      * @return 该页页对象
      */
     Page get(long pageId);
 
+    /**
+     * 异步获取某一页，页不在缓冲中时由后台线程读取，调用线程不等待磁盘
+     * <p>
+     * 得到的页与get相同，已被钉住，使用完毕后需要unpin
+     *
+     * @param pageId 页号
+     * @return 页对象的future
+     */
+    default CompletableFuture<Page> getAsync(long pageId) {
+        return CompletableFuture.completedFuture(get(pageId));
+    }
+
+    /**
+     * 异步获取一批页，页存储可以将其中相邻的页合并读取
+     *
+     * @param pageIds 页号列表
+     * @return 与页号顺序一致的页列表的future
+     */
+    default CompletableFuture<List<Page>> getAll(long[] pageIds) {
+        List<CompletableFuture<Page>> futures = new ArrayList<>(pageIds.length);
+        for (long pageId : pageIds) {
+            futures.add(getAsync(pageId));
+        }
+        return joinAll(futures);
+    }
+
     /**
      * 将页存储中的所有脏页写回文件
      */
     void flush();
+
+    /**
+     * 页的大小，上层的页内布局应由此推出
+     *
+     * @return 页大小，单位是字节
+     */
+    default int getPageSize() {
+        return PageManager.PAGE_SIZE;
+    }
+
+    /**
+     * 关闭页存储：写回脏页，释放其在缓冲中占用的帧并关闭文件。关闭后不应再使用该页存储
+     */
+    default void close() {
+        flush();
+    }
+
+    /**
+     * 回收一页，之后可以通过reusePage重新分配。页的内容不会被清除
+     *
+     * @param pageId 页号
+     */
+    default void freePage(long pageId) {
+    }
+
+    /**
+     * 取出一个已回收的页，由调用方重新初始化后使用
+     *
+     * @return 页号，没有可重用的页时返回-1
+     */
+    default long reusePage() {
+        return -1;
+    }
+
+    /**
+     * 预读提示：从pageId开始的count页即将被顺序访问
+     * <p>
+     * 页存储可以在后台将这些页装入缓冲，调用方不等待装入完成，也不保证一定装入。超出文件现有范围的页不会被预读
+     *
+     * @param pageId 起始页号
+     * @param count  页数
+     */
+    default void prefetch(long pageId, int count) {
+    }
+
+    /**
+     * 预读提示：这些页即将被访问
+     *
+     * @param pageIds 页号列表
+     */
+    default void prefetch(long[] pageIds) {
+    }
+
+    /**
+     * 将一组页的future合并为页列表的future，任一页失败时整体失败，已获取的页会被unpin
+     *
+     * @param futures 页的future
+     * @return 页列表的future
+     */
+    static CompletableFuture<List<Page>> joinAll(List<CompletableFuture<Page>> futures) {
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).whenComplete((v, e) -> {
+            if (e == null) {
+                return;
+            }
+            for (CompletableFuture<Page> future : futures) {
+                if (!future.isCompletedExceptionally() && future.join() != null) {
+                    future.join().unpin();
+                }
+            }
+        }).thenApply(v -> {
+            List<Page> pages = new ArrayList<>(futures.size());
+            for (CompletableFuture<Page> future : futures) {
+                pages.add(future.join());
+            }
+            return pages;
+        });
+    }
 }
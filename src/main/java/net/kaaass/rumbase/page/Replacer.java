@@ -2,131 +2,94 @@ package net.kaaass.rumbase.page;
 
 import net.kaaass.rumbase.page.exception.BufferException;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
-public class Replacer {
-    private static Replacer instance = null;
+/**
+ * 缓冲置换策略
+ * <p>
+ * 置换器以缓冲帧为单位跟踪已装入内存的页，帧号即页在缓冲中的偏移。命中操作会在每次访问缓存页时调用，
+ * 实现时应保证其为O(1)且尽量不加全局锁。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+public interface Replacer {
 
-    private Replacer() {
-        this.head = null;
-        this.tail = null;
-        this.table = new HashMap<>();
+    /**
+     * 可选的置换策略
+     */
+    enum Policy {
+        /**
+         * CLOCK，命中无锁，适合点查询为主的负载
+         */
+        CLOCK,
+        /**
+         * 2Q，抵抗全表扫描，适合点查询与报表查询混合的负载
+         */
+        TWO_QUEUE
     }
 
-    public static Replacer getInstance() {
-        if (instance == null) {
-            synchronized (Replacer.class) {
-                if (instance == null) {
-                    instance = new Replacer();
-                }
-            }
+    /**
+     * 按置换策略创建置换器
+     *
+     * @param policy   置换策略
+     * @param capacity 缓冲帧数
+     * @return 置换器
+     */
+    static Replacer of(Policy policy, int capacity) {
+        if (policy == Policy.TWO_QUEUE) {
+            return new TwoQueueReplacer(capacity);
         }
-        return instance;
+        return new ClockReplacer(capacity);
     }
 
-    public void insert(RumPage value) {
-        synchronized (this) {
-            if (!this.table.containsKey(value)) {//如果页没在内存中
-                Node tmp = new Node(value, null);
-                if (head == null) {
-                    this.head = tmp;
-                    this.tail = tmp;
-                } else {
-                    this.tail.next = tmp;
-                    this.tail = this.tail.next;
-                    this.table.put(value, this.tail);
-                }
-                ++size;
-            } else {
-                Node hitNode = this.table.get(value);
-                hit(hitNode);
-            }
-        }
-    }
+    /**
+     * 将新装入缓冲的页交由置换器管理
+     *
+     * @param page 新装入的页
+     */
+    void insert(RumPage page);
 
     /**
-     * 从链表中取出受害者页，若链表为空则返回null
+     * 记录一次对缓存页的访问
      *
-     * @return 返回受害者页面
-     * @throws BufferException 若链表中所有的页均被钉住，则抛出异常
+     * @param page 命中的页
      */
-    public RumPage victim() throws BufferException {
-        synchronized (this) {
-            if (size == 0) {
-                return null;
-            }
-            Node tmp = head;
-            while (tmp != null && tmp.pinned()) {
-                tmp = tmp.next;
-            }
-            if (tmp == null) {
-                throw new BufferException(2);
-            }
-            Node pre = head;//找tmp上一个节点
-            if (pre != tmp) {
-                while (pre.next != tmp) {
-                    pre = pre.next;
-                }
-            }
-            if (tmp == head) {
-                head = head.next;
-                size--;
-                return tmp.getData();
-            } else {
-                pre.next = tmp.next;
-                size--;
-                return tmp.getData();
-            }
-        }
-    }
+    void hit(RumPage page);
 
-    public int size() {
-        return size;
-    }
+    /**
+     * 选出一个受害者页并将其移出置换器，若置换器为空则返回null
+     *
+     * @return 受害者页
+     * @throws BufferException 若所有的页均被钉住，则抛出异常
+     */
+    RumPage victim() throws BufferException;
 
     /**
-     * 将命中的页移至链表尾
+     * 将victim选出后未能换出的页放回置换器，恢复其原有的状态，不视为一次新的装入
      *
-     * @param p 命中的节点
+     * @param page 未能换出的页
      */
-    private void hit(Node p) {
-        Node tmp = head;
-        while (tmp.next != null) {
-            if (tmp.next == p) {
-                break;
-            } else {
-                tmp = tmp.next;
-            }
-        }
-        if (p.next != null) {
-            tmp.next = p.next;
-            this.tail.next = p;
-            this.tail = this.tail.next;
-        }
+    default void restore(RumPage page) {
+        insert(page);
     }
 
-    private int size;
-    Node tail;
-    Node head;
-    Map<RumPage, Node> table;
-
-}
-
-class Node {
-    private final RumPage data;
-    Node next = null;
-
-    public Node(RumPage data, Node p) {
-        this.data = data;
-        this.next = p;
-    }
+    /**
+     * 将页移出置换器，用于页被主动释放的情形
+     *
+     * @param page 待移出的页
+     */
+    void remove(RumPage page);
 
-    public boolean pinned() {
-        return data.pinned();
-    }
+    /**
+     * 列出置换器中的页，越不容易被换出的页越靠前。用于保存缓冲中的热点页，不要求与并发的修改一致
+     *
+     * @return 页列表
+     */
+    List<RumPage> snapshot();
 
-    public RumPage getData() {
-        return data;
-    }
+    /**
+     * @return 置换器中管理的页数
+     */
+    int size();
 }
@@ -1,32 +1,37 @@
 package net.kaaass.rumbase.page;
 
 import net.kaaass.rumbase.page.exception.BufferException;
+import net.kaaass.rumbase.page.exception.FileException;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 内存管理
  * <p>
- * 使用单例模式，使用byte数组开辟连续空间，内存的大小不得超过BYTE_BUFFER_SIZE，RumBuffer在操作时直接将整块内存锁住
+ * 使用单例模式。缓冲的帧分配在堆外内存中，不受GC影响，大小为BUFFER_SIZE页。缓冲按(页存储, 页号)的哈希分为若干分片，
+ * 每个分片有独立的页表、空闲帧栈与置换器，不再将整块内存锁住。分片数取BUFFER_SHARD_NUM，
+ * 并保证每个分片的帧区不超过单个直接缓冲的大小上限。
  * </p>
  *
  * @author XuanLaoYee
  */
 public class RumBuffer {
     private static RumBuffer instance = null;
-    private int size = 0;
-    private ReentrantLock lock = null;
-    private final byte[] byteBuffer = new byte[PageManager.BYTE_BUFFER_SIZE];
-    private List<Integer> freePage = null;
+    private final BufferShard[] shards;
 
     private RumBuffer() {
-        this.lock = new ReentrantLock();
-        this.size = PageManager.BUFFER_SIZE;
-        this.freePage = new ArrayList<>();
-        for (int i = 0; i < this.size; i++) {
-            this.freePage.add(i);
+        int size = PageManager.BUFFER_SIZE;
+        // 单个直接缓冲最大为2GB，分片过大时增加分片数。分片多分配一页用于对齐
+        int maxFramesPerShard = Integer.MAX_VALUE / PageManager.PAGE_SIZE - 1;
+        int shardNum = Math.max(1, Math.min(PageManager.BUFFER_SHARD_NUM, size));
+        shardNum = Math.max(shardNum, (size + maxFramesPerShard - 1) / maxFramesPerShard);
+        this.shards = new BufferShard[shardNum];
+        for (int i = 0; i < shardNum; i++) {
+            int capacity = size / shardNum + (i < size % shardNum ? 1 : 0);
+            this.shards[i] = new BufferShard(capacity);
         }
     }
 
@@ -42,95 +47,141 @@ public class RumBuffer {
     }
 
     /**
-     * 将页大小的byte数组写入至缓冲的对应偏移中
+     * 缓冲是否已经分配，分配后页大小与缓冲大小不能再修改
+     */
+    static boolean initialized() {
+        return instance != null;
+    }
+
+    /**
+     * 从缓冲中获取页，未命中时由页所在分片装入
      *
-     * @param offset 这里的偏移指的是按照页的大小进行偏移，比如3代表缓存数组中第3*PAGE_SIZE的位置
-     * @param bytes  这里的数组大小等于PAGE_SIZE
-     * @throws BufferException 若缓冲大小为0，则抛出内存不足的异常。若占用已装入内存空间，则抛出占用非空内存位置异常
+     * @param storage 页所属的页存储
+     * @param pageId  页号
+     * @return 页对象
+     * @throws FileException   读取文件失败
+     * @throws BufferException 分片中所有的页均被钉住，无法换入
      */
-    public void put(int offset, byte[] bytes) throws BufferException {
-        if (this.size <= 0) {
-            throw new BufferException(1);
-        }
-        if (offset < 0) {
-            throw new BufferException(1);
-        }
-        lock.lock();
-        try {
-            System.arraycopy(bytes, 0, this.byteBuffer, offset * PageManager.PAGE_SIZE, bytes.length);
-            if (!this.freePage.contains(offset)) {
-                throw new BufferException(3);
-            }
-            this.freePage.remove((Integer) offset);
-            this.size--;
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            lock.unlock();
-        }
+    RumPage get(RumPageStorage storage, long pageId) throws FileException, BufferException {
+        return shardOf(storage, pageId).get(storage, pageId);
     }
 
     /**
-     * 从内存中读取指定位置的长度为页长的数据
+     * 登记由调用方装入某页，见BufferShard.claim
      *
-     * @param offset 这里的偏移指的是按照页的大小进行偏移
-     * @return 返回大小为页长的数组，该数组占用的内存与缓冲区无关
+     * @param storage 页所属的页存储
+     * @param pageId  页号
+     * @return 登记的future，页已缓冲或正在装入时返回null
      */
-    public byte[] get(int offset) {
-        lock.lock();
-        try {
-            byte[] temp = new byte[PageManager.PAGE_SIZE];
-            System.arraycopy(this.byteBuffer, offset * PageManager.PAGE_SIZE, temp, offset, PageManager.PAGE_SIZE);
-            return temp;
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            lock.unlock();
-        }
-        return null;
+    CompletableFuture<RumPage> claim(RumPageStorage storage, long pageId) {
+        return shardOf(storage, pageId).claim(storage, pageId);
     }
 
     /**
-     * 释放缓冲区偏移为offset * page_size 处，大小为页长的空间
+     * 完成已登记的装入
      *
-     * @param offset 这里的偏移指的是按照页的大小进行偏移
+     * @param storage 页所属的页存储
+     * @param pageId  页号
+     * @param future  登记的future
+     * @param source  页数据，为null时从文件读取
+     * @return 页对象
+     * @throws FileException   读取文件失败
+     * @throws BufferException 分片中所有的页均被钉住，无法换入
      */
-    public void free(int offset) {
-        synchronized (RumBuffer.getInstance()) {
-            lock.lock();
-            try {
-                System.arraycopy(this.byteBuffer, offset * PageManager.PAGE_SIZE, new byte[PageManager.PAGE_SIZE], 0, PageManager.PAGE_SIZE);
-                this.freePage.add(offset);
-                this.size++;
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                lock.unlock();
-            }
+    RumPage finishLoad(RumPageStorage storage, long pageId, CompletableFuture<RumPage> future, ByteBuffer source)
+            throws FileException, BufferException {
+        return shardOf(storage, pageId).finishLoad(storage, pageId, future, source);
+    }
+
+    /**
+     * 页是否已在缓冲中
+     *
+     * @param storage 页所属的页存储
+     * @param pageId  页号
+     * @return 是否已缓冲
+     */
+    boolean contains(RumPageStorage storage, long pageId) {
+        return shardOf(storage, pageId).contains(storage, pageId);
+    }
+
+    /**
+     * 列出缓冲中属于某页存储的页
+     *
+     * @param storage 页存储
+     * @return 页列表
+     */
+    List<RumPage> pagesOf(RumPageStorage storage) {
+        List<RumPage> pages = new ArrayList<>();
+        for (BufferShard shard : this.shards) {
+            pages.addAll(shard.pagesOf(storage));
         }
+        return pages;
+    }
 
+    /**
+     * 换出缓冲中属于某页存储的页，用于关闭页存储。被钉住的页不换出
+     *
+     * @param storage 页存储
+     * @throws FileException 写回失败
+     */
+    void evictAll(RumPageStorage storage) throws FileException {
+        for (BufferShard shard : this.shards) {
+            shard.evictAll(storage);
+        }
     }
 
     /**
-     * 返回缓冲区指针
+     * 列出缓冲中未被钉住的脏页，供后台写回使用
      *
-     * @return 缓冲区指针
+     * @return 页列表
      */
-    public byte[] buffer() {
-        return byteBuffer;
+    List<RumPage> dirtyPages() {
+        List<RumPage> pages = new ArrayList<>();
+        for (BufferShard shard : this.shards) {
+            pages.addAll(shard.dirtyPages());
+        }
+        return pages;
     }
 
     /**
-     * 返回空闲页的偏移
+     * 列出缓冲中的页，越热的页越靠前。各分片的顺序交错合并
      *
-     * @return 空闲页的偏移
+     * @return 页列表
      */
-    public int getFreeOffset() {
-        synchronized (this) {
-            if (this.size <= 0) {
-                return -1;
+    List<RumPage> snapshot() {
+        List<List<RumPage>> lists = new ArrayList<>();
+        int max = 0;
+        for (BufferShard shard : this.shards) {
+            List<RumPage> list = shard.snapshot();
+            lists.add(list);
+            max = Math.max(max, list.size());
+        }
+        List<RumPage> pages = new ArrayList<>();
+        for (int i = 0; i < max; i++) {
+            for (List<RumPage> list : lists) {
+                if (i < list.size()) {
+                    pages.add(list.get(i));
+                }
             }
-            return this.freePage.get(0);
         }
+        return pages;
+    }
+
+    /**
+     * 页所在的分片
+     */
+    private BufferShard shardOf(RumPageStorage storage, long pageId) {
+        long h = pageId * 0x9E3779B97F4A7C15L + storage.getId();
+        h ^= h >>> 32;
+        return this.shards[(int) Math.floorMod(h, (long) this.shards.length)];
+    }
+
+    /**
+     * 返回分片数
+     *
+     * @return 分片数
+     */
+    public int shardNum() {
+        return shards.length;
     }
 }
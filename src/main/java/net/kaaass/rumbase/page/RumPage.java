@@ -3,24 +3,26 @@ package net.kaaass.rumbase.page;
 import net.kaaass.rumbase.page.exception.FileException;
 import net.kaaass.rumbase.page.exception.PageException;
 
-import java.io.File;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Page实现
  * <p>
- * 页持有的是整个缓冲区的指针和偏移。页在patchData时本身并不加锁，如果防止冲突需要在上层加锁。
+ * 页持有的是其所在缓冲帧的视图，offset为帧在分片中的下标。页在patchData时本身并不加锁，如果防止冲突需要在上层加锁。
  * </p>
  *
  * @author XuanLaoYee
  */
 public class RumPage implements Page {
-    public RumPage(byte[] data, long pageId, String filepath, int offset) {
+    public RumPage(ByteBuffer data, long pageId, String filepath, int offset) {
         this.data = data;
         this.pageId = pageId;
         this.dirty = false;
         this.filepath = filepath;
-        this.offset = offset;//在内存中的偏移,指的是以页为单位的偏移
+        this.offset = offset;//帧在分片中的下标
     }
 
     /**
@@ -32,7 +34,7 @@ public class RumPage implements Page {
     public byte[] getDataBytes() {
         synchronized (this) {
             byte[] tmp = new byte[PageManager.PAGE_SIZE];
-            System.arraycopy(this.data, this.offset * PageManager.PAGE_SIZE, tmp, 0, tmp.length);
+            this.data.duplicate().get(tmp);
             return tmp;
         }
     }
@@ -47,57 +49,183 @@ public class RumPage implements Page {
         if (offset + data.length > PageManager.PAGE_SIZE) {
             throw new PageException(1);
         }
+        //直接往缓冲内写入，写入后再标记为脏页，保证清除脏标记之后的写回能看到这次修改
+        ByteBuffer dst = this.data.duplicate();
+        dst.position(offset);
+        dst.put(data);
+        markDirty();
+    }
+
+    /**
+     * 直接读取帧内数据，不复制
+     */
+    @Override
+    public int getInt(int offset) {
+        return this.data.getInt(offset);
+    }
+
+    @Override
+    public long getLong(int offset) {
+        return this.data.getLong(offset);
+    }
+
+    @Override
+    public void putInt(int offset, int value) throws PageException {
+        if (offset < 0 || offset + Integer.BYTES > PageManager.PAGE_SIZE) {
+            throw new PageException(1);
+        }
+        this.data.putInt(offset, value);
+        markDirty();
+    }
+
+    @Override
+    public void putLong(int offset, long value) throws PageException {
+        if (offset < 0 || offset + Long.BYTES > PageManager.PAGE_SIZE) {
+            throw new PageException(1);
+        }
+        this.data.putLong(offset, value);
+        markDirty();
+    }
+
+    @Override
+    public ByteBuffer slice(int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, PageManager.PAGE_SIZE);
+        ByteBuffer view = this.data.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    private void markDirty() {
         synchronized (this) {
             this.dirty = true;
         }
-        //直接往缓冲内写入
-        System.arraycopy(data, 0, this.data, this.offset * PageManager.PAGE_SIZE + offset, data.length);
     }
 
     /**
-     * 还未实现double write
+     * 将脏页写回文件，干净的页与已被换出的页不会写文件。还未实现double write
      *
      * @throws FileException
      */
     @Override
     public void flush() throws FileException {
-        File file = new File(this.filepath);
         synchronized (this) {
+            if (this.evicted) {
+                return;
+            }
+            writeBack();
+        }
+    }
+
+    /**
+     * 先清除脏标记，写回期间的修改会重新标记
+     */
+    private void writeBack() throws FileException {
+        if (!this.dirty) {
+            return;
+        }
+        this.dirty = false;
+        if (this.storage.isClosed()) {
+            // 页存储已关闭，修改不再写回
+            return;
+        }
+        try {
+            this.storage.getPageFile().write(this.pageId, this.data.duplicate());
+        } catch (FileException e) {
+            this.dirty = true;
+            throw e;
+        }
+    }
+
+    /**
+     * 钉住页，页已被换出时不钉住
+     * <p>
+     * 先增加钉住计数再检查换出标志，换出时先置换出标志再检查钉住计数，因此两者中至少有一方能看到对方，
+     * 钉住成功的页不会被换出。
+     * </p>
+     *
+     * @return 是否钉住成功
+     */
+    boolean tryPin() {
+        this.pinned.incrementAndGet();
+        if (this.evicted) {
+            this.pinned.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 换出页：写回脏数据并使页对象失效。之后帧会被其他页复用，其他线程对该页对象的flush都不会再写文件
+     *
+     * @return 页已被钉住时不换出，返回false
+     * @throws FileException 写回失败，此时页不会失效
+     */
+    boolean evict() throws FileException {
+        synchronized (this) {
+            this.evicted = true;
+            if (pinned()) {
+                this.evicted = false;
+                return false;
+            }
             try {
-                RandomAccessFile out = new RandomAccessFile(file, "rw");
-                try {
-                    out.seek((PageManager.FILE_HEAD_SIZE + this.pageId) * (long) PageManager.PAGE_SIZE);
-                } catch (Exception e) {
-                    throw new FileException(4);
-                }
-                try {
-                    byte[] data = new byte[PageManager.PAGE_SIZE];
-                    System.arraycopy(this.data, this.offset * PageManager.PAGE_SIZE, data, 0, data.length);
-                    out.write(data);
-                } catch (Exception e) {
-                    throw new FileException(2);
-                }
-                out.close();
+                writeBack();
             } catch (FileException e) {
+                this.evicted = false;
                 throw e;
-            } catch (Exception e) {
-                e.printStackTrace();
             }
+            return true;
         }
     }
 
+    @Override
+    public void latchShared() {
+        this.latch.readLock();
+    }
+
+    @Override
+    public void unlatchShared() {
+        this.latch.tryUnlockRead();
+    }
+
+    @Override
+    public void latchExclusive() {
+        this.latch.writeLock();
+    }
+
+    @Override
+    public void unlatchExclusive() {
+        this.latch.tryUnlockWrite();
+    }
+
+    @Override
+    public boolean tryLatchShared() {
+        return this.latch.tryReadLock() != 0;
+    }
+
+    @Override
+    public boolean tryLatchExclusive() {
+        return this.latch.tryWriteLock() != 0;
+    }
+
+    @Override
+    public long optimisticVersion() {
+        return this.latch.tryOptimisticRead();
+    }
+
+    @Override
+    public boolean validate(long version) {
+        return this.latch.validate(version);
+    }
+
     @Override
     public void pin() {
-        synchronized (this) {
-            pinned++;
-        }
+        pinned.incrementAndGet();
     }
 
     @Override
     public void unpin() {
-        synchronized (this) {
-            pinned--;
-        }
+        pinned.decrementAndGet();
     }
 
     @Override
@@ -111,7 +239,7 @@ public class RumPage implements Page {
     }
 
     public boolean pinned() {
-        return pinned > 0;
+        return pinned.get() > 0;
     }
 
     public boolean dirty() {
@@ -122,10 +250,22 @@ public class RumPage implements Page {
         return this.pageId;
     }
 
-    private final byte[] data;
+    private final ByteBuffer data;
     private final long pageId;
-    boolean dirty;
-    int pinned = 0;
+    volatile boolean dirty;
+    private volatile boolean evicted = false;
+    /**
+     * 钉住计数，置换器会在不加锁的情况下读取
+     */
+    final AtomicInteger pinned = new AtomicInteger(0);
     String filepath;
     int offset;
+    /**
+     * 页所属的页存储，换出时用于将页从其页表中移除
+     */
+    RumPageStorage storage;
+    /**
+     * 页锁，页锁跟随页对象，因此只有在页被pin住期间才有意义
+     */
+    private final StampedLock latch = new StampedLock();
 }
@@ -1,101 +1,202 @@
 package net.kaaass.rumbase.page;
 
-import net.kaaass.rumbase.page.exception.BufferException;
 import net.kaaass.rumbase.page.exception.FileException;
 
-import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * 页存储的实现
+ * <p>
+ * 页缓存在RumBuffer中，由页所在的缓冲分片负责查找与装入：先查分片的并发页表，只有未命中时才访问文件，
+ * 同一页的并发未命中只由一个线程装入，其余线程等待该次装入的结果。
+ * 异步获取与预读由读页调度器在后台完成。
+ * </p>
+ *
  * @author 11158
  */
 public class RumPageStorage implements PageStorage {
     public RumPageStorage(String filepath) throws FileException {
+        this(filepath, false);
+    }
+
+    /**
+     * @param filepath 文件路径
+     * @param direct   页的读写是否绕过操作系统的页缓存
+     * @throws FileException 文件打开失败
+     */
+    public RumPageStorage(String filepath, boolean direct) throws FileException {
         this.filepath = filepath;
-        pageMap = new HashMap<>();
+        this.pageFile = new PageFile(filepath, direct);
+        this.freePageMap = new FreePageMap(this.pageFile.getChannel());
+        this.id = ID_COUNTER.incrementAndGet();
     }
 
     @Override
     public Page get(long pageId) {
-        File file = new File(filepath);
-        //文件不存在时创建新文件
-        if (!file.exists()) {
-            try {
-                file.createNewFile();
-                FileOutputStream out = new FileOutputStream(file);
-                out.write(new byte[PageManager.PAGE_SIZE * 10]);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        //文件会预留5页作为文件头
         try {
-            FileInputStream in = new FileInputStream(file);
-            byte[] data = new byte[PageManager.PAGE_SIZE];
-            try {
-                //当文件存储容量不够时追加
-                while (in.available() < (pageId + 1 + PageManager.FILE_HEAD_SIZE) * PageManager.PAGE_SIZE) {
-                    FileWriter fw = new FileWriter(file, true);
-                    char[] blank = new char[PageManager.PAGE_SIZE * (in.available() / PageManager.PAGE_SIZE)];
-                    Arrays.fill(blank, (char) 0);
-                    fw.write(blank);
-                    fw.close();
-                }
-                in.skip((pageId + PageManager.FILE_HEAD_SIZE) * PageManager.PAGE_SIZE);
-                int readNumber = in.read(data);
-                if (readNumber < PageManager.PAGE_SIZE) {
-                    throw new FileException(4);
-                }
-            } catch (Exception e) {
-                throw new FileException(4);
-            }
-
-            Long tmpId = pageId;
-            if (pageMap.containsKey(tmpId)) {
-                return pageMap.get(tmpId);
-            }
-            int offset = -1;
-            while (offset < 0) {
-                synchronized (RumBuffer.getInstance()) {//并非区间锁，而是将整个内存全部锁住
-                    try {
-                        offset = RumBuffer.getInstance().getFreeOffset();
-                        RumBuffer.getInstance().put(offset, data);
-                    } catch (BufferException e) {
-                        //下面的这个换出算法没有考虑到在此过程中其他进程再次pin()的情况
-                        RumPage p = Replacer.getInstance().victim();
-                        if (p.dirty()) {
-                            p.flush();
-                        }
-                        RumBuffer.getInstance().free(p.offset);
-                        this.pageMap.remove(p.pageId());
-                    }
-                }
-            }
-            RumPage page = new RumPage(RumBuffer.getInstance().buffer(), pageId, this.filepath, offset);
-            Replacer.getInstance().insert(page);
-            pageMap.put(tmpId, page);
-            return page;
+            return RumBuffer.getInstance().get(this, pageId);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * 已缓冲的页直接返回，否则交给读页调度器
+     */
+    @Override
+    public CompletableFuture<Page> getAsync(long pageId) {
+        if (RumBuffer.getInstance().contains(this, pageId)) {
+            return CompletableFuture.completedFuture(get(pageId));
+        }
+        return PageIoScheduler.getInstance().read(this, new long[]{pageId}).get(0);
+    }
+
+    /**
+     * 未缓冲的页作为一个请求交给读页调度器，其中相邻的页会合并读取
+     */
+    @Override
+    public CompletableFuture<List<Page>> getAll(long[] pageIds) {
+        var buffer = RumBuffer.getInstance();
+        List<CompletableFuture<Page>> futures = new ArrayList<>(pageIds.length);
+        long[] missing = new long[pageIds.length];
+        int[] missingIndex = new int[pageIds.length];
+        int missingNum = 0;
+        for (int i = 0; i < pageIds.length; i++) {
+            if (buffer.contains(this, pageIds[i])) {
+                futures.add(CompletableFuture.completedFuture(get(pageIds[i])));
+            } else {
+                futures.add(null);
+                missing[missingNum] = pageIds[i];
+                missingIndex[missingNum++] = i;
+            }
+        }
+        if (missingNum > 0) {
+            var loaded = PageIoScheduler.getInstance().read(this, Arrays.copyOf(missing, missingNum));
+            for (int i = 0; i < missingNum; i++) {
+                futures.set(missingIndex[i], loaded.get(i));
+            }
+        }
+        return PageStorage.joinAll(futures);
+    }
+
     @Override
     public void flush() {
-        Set<Map.Entry<Long, Page>> entrySet = this.pageMap.entrySet();
-        for (Map.Entry<Long, Page> entry : entrySet) {
+        for (RumPage page : RumBuffer.getInstance().pagesOf(this)) {
             try {
-                entry.getValue().flush();
+                page.flush();
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
+        try {
+            this.pageFile.force();
+        } catch (FileException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 仍被钉住的页留在缓冲中，之后的修改不再写回
+     */
+    @Override
+    public void close() {
+        flush();
+        try {
+            RumBuffer.getInstance().evictAll(this);
+        } catch (FileException e) {
+            e.printStackTrace();
+        }
+        this.closed = true;
+        this.pageFile.close();
+    }
+
+    @Override
+    public void freePage(long pageId) {
+        try {
+            this.freePageMap.free(pageId);
+        } catch (FileException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public long reusePage() {
+        try {
+            return this.freePageMap.allocate();
+        } catch (FileException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    /**
+     * 交给读页调度器在后台装入缓冲。已缓冲的页与超出文件范围的页会被跳过，单次预读不超过缓冲的四分之一
+     */
+    @Override
+    public void prefetch(long pageId, int count) {
+        long start = Math.max(pageId, 0);
+        long end = Math.min(pageId + Math.min(count, PageManager.BUFFER_SIZE / 4), this.pageFile.pageCount());
+        if (start >= end) {
+            return;
+        }
+        long[] pageIds = new long[(int) (end - start)];
+        for (int i = 0; i < pageIds.length; i++) {
+            pageIds[i] = start + i;
+        }
+        prefetch(pageIds);
+    }
+
+    @Override
+    public void prefetch(long[] pageIds) {
+        var buffer = RumBuffer.getInstance();
+        long pageCount = this.pageFile.pageCount();
+        long[] missing = new long[pageIds.length];
+        int missingNum = 0;
+        for (long id : pageIds) {
+            if (id >= 0 && id < pageCount && !buffer.contains(this, id)) {
+                missing[missingNum++] = id;
+            }
+        }
+        if (missingNum > 0) {
+            PageIoScheduler.getInstance().prefetch(this, Arrays.copyOf(missing, missingNum));
+        }
+    }
+
+    PageFile getPageFile() {
+        return pageFile;
+    }
+
+    String getFilepath() {
+        return filepath;
+    }
+
+    /**
+     * 页存储编号，与页号一起作为缓冲页表的键
+     */
+    int getId() {
+        return id;
+    }
+
+    boolean isClosed() {
+        return closed;
     }
 
-    private final Map<Long, Page> pageMap;
+    private static final AtomicInteger ID_COUNTER = new AtomicInteger(0);
+
+    private final int id;
     private final String filepath;
+    /**
+     * 页文件，在页存储的生命周期内保持打开
+     */
+    private final PageFile pageFile;
+    /**
+     * 文件头中的空闲页位图
+     */
+    private final FreePageMap freePageMap;
+    private volatile boolean closed = false;
 }
@@ -0,0 +1,222 @@
+package net.kaaass.rumbase.page;
+
+import net.kaaass.rumbase.page.exception.BufferException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 2Q置换算法，用于抵抗全表扫描对缓冲的冲刷
+ * <p>
+ * 新装入的页进入先进先出的A1in队列，在A1in中的再次访问被视为相关访问而忽略。A1in中被换出的页只保留页号，
+ * 记入幽灵队列A1out；页再次装入时若在A1out中，说明其被反复使用，直接进入LRU队列Am。
+ * 扫描只访问一次的页始终停留在A1in中并被优先换出，索引根页、元信息页等热点页则留在Am中。
+ * </p>
+ * <p>
+ * 参数取论文推荐值：A1in占缓冲的1/4，A1out记录缓冲一半数量的页号。Am中的命中通过tryLock移动，
+ * 竞争时放弃本次调整，保证命中不会阻塞。
+ * </p>
+ *
+ * @author XuanLaoYee
+ */
+public class TwoQueueReplacer implements Replacer {
+
+    public TwoQueueReplacer(int capacity) {
+        this.inCapacity = Math.max(1, capacity / 4);
+        this.outCapacity = Math.max(1, capacity / 2);
+    }
+
+    @Override
+    public void insert(RumPage page) {
+        lock.lock();
+        try {
+            if (this.am.contains(page) || this.in.contains(page)) {
+                return;
+            }
+            if (this.out.remove(new GhostKey(page))) {
+                // 短期内被再次装入，说明为热点页
+                this.am.add(page);
+            } else {
+                this.in.add(page);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void hit(RumPage page) {
+        // A1in中的命中视为相关访问，不做调整；Am中的命中移至队尾
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (this.am.remove(page)) {
+                this.am.add(page);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public RumPage victim() throws BufferException {
+        lock.lock();
+        try {
+            if (size() == 0) {
+                return null;
+            }
+            RumPage page = null;
+            if (this.in.size() > this.inCapacity || this.am.isEmpty()) {
+                page = pollUnpinned(this.in);
+                if (page != null) {
+                    remember(page);
+                }
+            }
+            if (page == null) {
+                page = pollUnpinned(this.am);
+            }
+            if (page == null) {
+                page = pollUnpinned(this.in);
+                if (page != null) {
+                    remember(page);
+                }
+            }
+            if (page == null) {
+                throw new BufferException(2);
+            }
+            return page;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 从A1in选出的页已记入幽灵队列，放回时删除其幽灵记录并重新进入A1in，以免被误认为再次装入而进入Am
+     */
+    @Override
+    public void restore(RumPage page) {
+        lock.lock();
+        try {
+            if (this.am.contains(page) || this.in.contains(page)) {
+                return;
+            }
+            if (this.out.remove(new GhostKey(page))) {
+                this.in.add(page);
+            } else {
+                this.am.add(page);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(RumPage page) {
+        lock.lock();
+        try {
+            if (!this.in.remove(page)) {
+                this.am.remove(page);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Am中的页在前，两个队列中都是越晚进入队尾的越靠前
+     */
+    @Override
+    public List<RumPage> snapshot() {
+        lock.lock();
+        try {
+            List<RumPage> am = new ArrayList<>(this.am);
+            List<RumPage> in = new ArrayList<>(this.in);
+            Collections.reverse(am);
+            Collections.reverse(in);
+            am.addAll(in);
+            return am;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return this.in.size() + this.am.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取出队列中最早的未被钉住的页
+     */
+    private static RumPage pollUnpinned(LinkedHashSet<RumPage> queue) {
+        Iterator<RumPage> it = queue.iterator();
+        while (it.hasNext()) {
+            RumPage page = it.next();
+            if (!page.pinned()) {
+                it.remove();
+                return page;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 将从A1in换出的页记入幽灵队列
+     */
+    private void remember(RumPage page) {
+        this.out.add(new GhostKey(page));
+        if (this.out.size() > this.outCapacity) {
+            Iterator<GhostKey> it = this.out.iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * 幽灵队列中记录的页标识，页被换出后页对象不再有效，因此只保留文件与页号
+     */
+    private static class GhostKey {
+        private final String filepath;
+        private final long pageId;
+
+        GhostKey(RumPage page) {
+            this.filepath = page.filepath;
+            this.pageId = page.pageId();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GhostKey)) {
+                return false;
+            }
+            GhostKey that = (GhostKey) o;
+            return pageId == that.pageId && Objects.equals(filepath, that.filepath);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filepath, pageId);
+        }
+    }
+
+    private final int inCapacity;
+    private final int outCapacity;
+    private final LinkedHashSet<RumPage> in = new LinkedHashSet<>();
+    private final LinkedHashSet<RumPage> am = new LinkedHashSet<>();
+    private final LinkedHashSet<GhostKey> out = new LinkedHashSet<>();
+    private final ReentrantLock lock = new ReentrantLock();
+}
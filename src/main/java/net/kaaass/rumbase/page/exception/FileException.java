@@ -12,6 +12,8 @@ import java.util.Map;
  * E9001-2  写入文件失败
  * E9001-3  文件打开失败
  * E9001-4  游标越界
+ * E9001-5  读取文件失败
+ * E9001-6  文件的页大小与配置不符
  *
  * @author XuanLaoYee
  */
@@ -21,6 +23,8 @@ public class FileException extends RumbaseException {
         put(2, "写入文件失败");
         put(3, "文件打开失败");
         put(4, "offset越界");
+        put(5, "读取文件失败");
+        put(6, "文件的页大小与配置不符");
     }};
 
     /**
@@ -31,4 +35,14 @@ public class FileException extends RumbaseException {
     public FileException(int subId) {
         super(9001, subId, REASONS.get(subId));
     }
+
+    /**
+     * 文件异常
+     *
+     * @param subId 子错误号
+     * @param cause 源错误
+     */
+    public FileException(int subId, Throwable cause) {
+        super(9001, subId, REASONS.get(subId), cause);
+    }
 }
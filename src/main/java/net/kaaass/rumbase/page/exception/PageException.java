@@ -9,12 +9,16 @@ import java.util.Map;
  * E9002 文件异常
  * <p>
  * E9002-1  回写数据偏移与大小之和超过规定
+ * E9002-2  页大小需为4KB至64KB之间的2的幂，缓冲大小需为正数
+ * E9002-3  已有页存储被打开，无法修改页大小与缓冲大小
  *
  * @author XuanLaoYee
  */
 public class PageException extends RumbaseException {
     public static final Map<Integer, String> REASONS = new HashMap<Integer, String>() {{
         put(1, "回写数据偏移与大小之和超过规定");
+        put(2, "页大小需为4KB至64KB之间的2的幂，缓冲大小需为正数");
+        put(3, "已有页存储被打开，无法修改页大小与缓冲大小");
     }};
 
     /**
@@ -5,12 +5,15 @@ import net.kaaass.rumbase.page.PageManager;
 import net.kaaass.rumbase.page.exception.FileException;
 import net.kaaass.rumbase.page.exception.PageException;
 
+import java.util.concurrent.locks.StampedLock;
+
 public class MockPage implements Page {
     private final byte[] data;
     long pageId;
     boolean dirty;
     int pinned = 0;
     String filepath;
+    private final StampedLock latch = new StampedLock();
 
     MockPage(byte[] data, long pageId, String filepath) {
         this.data = data;
@@ -38,6 +41,46 @@ public class MockPage implements Page {
     public void flush() throws FileException {
     }
 
+    @Override
+    public void latchShared() {
+        this.latch.readLock();
+    }
+
+    @Override
+    public void unlatchShared() {
+        this.latch.tryUnlockRead();
+    }
+
+    @Override
+    public void latchExclusive() {
+        this.latch.writeLock();
+    }
+
+    @Override
+    public void unlatchExclusive() {
+        this.latch.tryUnlockWrite();
+    }
+
+    @Override
+    public boolean tryLatchShared() {
+        return this.latch.tryReadLock() != 0;
+    }
+
+    @Override
+    public boolean tryLatchExclusive() {
+        return this.latch.tryWriteLock() != 0;
+    }
+
+    @Override
+    public long optimisticVersion() {
+        return this.latch.tryOptimisticRead();
+    }
+
+    @Override
+    public boolean validate(long version) {
+        return this.latch.validate(version);
+    }
+
     @Override
     public void pin() {
         synchronized (this) {
@@ -32,11 +32,12 @@ public class MockPageStorage implements PageStorage {
             byte[] data = new byte[PageManager.PAGE_SIZE];
             System.arraycopy(fakeFile, (int) (pageId + PageManager.FILE_HEAD_SIZE) * PageManager.PAGE_SIZE, data, 0, data.length);
             Integer tmpId = (int) pageId;
-            if (pageMap.containsKey(tmpId)) {
-                return pageMap.get(tmpId);
+            Page page = pageMap.get(tmpId);
+            if (page == null) {
+                page = new MockPage(data, pageId, this.filepath);
+                pageMap.put(tmpId, page);
             }
-            Page page = new MockPage(data, pageId, this.filepath);
-            pageMap.put(tmpId, page);
+            page.pin();
             return page;
         } catch (Exception e) {
             e.printStackTrace();
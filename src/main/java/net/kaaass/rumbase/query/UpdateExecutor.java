@@ -37,21 +37,8 @@ public class UpdateExecutor implements Executable {
         table.getFields().forEach(f -> idrs.add(new ColumnIdentifier(table.getTableName(), f.getName())));
         idrs.add(new ColumnIdentifier("__reserved__", "id"));
 
-        var indexedField = table.getFirstIndexedField();
-        if (indexedField == null) {
-            throw new ArgumentException(2);
-        }
-
-        List<List<Object>> rows = new ArrayList<>();
-        var iter = table.searchAll(indexedField.getName());
-        while (iter.hasNext()) {
-            var uuid = iter.next().getUuid();
-            List<List<Object>> finalRows = rows;
-            table.read(context, uuid).ifPresent(row -> {
-                row.add(uuid);
-                finalRows.add(row);
-            });
-        }
+        // 按物理顺序扫描全表，每行末尾为其uuid
+        List<List<Object>> rows = table.readAllWithUuid(context);
 
         var where = statement.getWhere();
         if (where != null) {
@@ -3,6 +3,7 @@ package net.kaaass.rumbase.record;
 import net.kaaass.rumbase.record.exception.RecordNotFoundException;
 import net.kaaass.rumbase.transaction.TransactionContext;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -21,6 +22,15 @@ public interface IRecordStorage {
      */
     long insert(TransactionContext txContext, byte[] rawData);
 
+    /**
+     * 向存储中批量加入记录数据
+     *
+     * @param txContext 事务上下文
+     * @param rawData   各条记录的字节数据
+     * @return 按顺序返回各记录的ID
+     */
+    List<Long> insertAll(TransactionContext txContext, List<byte[]> rawData);
+
     /**
      * 由记录ID查询记录数据
      *
@@ -43,6 +53,14 @@ public interface IRecordStorage {
      */
     Optional<byte[]> queryOptional(TransactionContext txContext, long recordId) throws RecordNotFoundException;
 
+    /**
+     * 按物理顺序遍历对事务可见的记录，不包含元信息
+     *
+     * @param txContext 事务上下文
+     * @return 记录游标
+     */
+    RecordCursor scan(TransactionContext txContext);
+
     /**
      * 由记录ID删除记录数据
      *
@@ -51,6 +69,19 @@ public interface IRecordStorage {
      */
     void delete(TransactionContext txContext, long recordId) throws RecordNotFoundException;
 
+    /**
+     * 由记录ID更新记录数据。能原地更新时记录ID不变，否则删除旧记录并插入新记录
+     *
+     * @param txContext 事务上下文
+     * @param recordId  记录ID
+     * @param rawData   新的字节数据
+     * @return 更新后的记录ID
+     */
+    default long update(TransactionContext txContext, long recordId, byte[] rawData) throws RecordNotFoundException {
+        delete(txContext, recordId);
+        return insert(txContext, rawData);
+    }
+
     /**
      * 获得记录存储的元信息（与单个记录无关）
      *
@@ -14,6 +14,9 @@ import net.kaaass.rumbase.transaction.TransactionIsolation;
 import net.kaaass.rumbase.transaction.TransactionStatus;
 import net.kaaass.rumbase.transaction.exception.DeadlockException;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -39,14 +42,29 @@ public class MvccRecordStorage implements IRecordStorage {
 
     @Override
     public long insert(TransactionContext txContext, byte[] rawData) {
+        // 不用检查版本跳跃的原因是，插入本身不用；更新操作必定先删除，而删除检查
+        // 插入记录
+        return storage.insertItem(txContext, wrapInsert(txContext, rawData));
+    }
+
+    @Override
+    public List<Long> insertAll(TransactionContext txContext, List<byte[]> rawData) {
+        var items = new ArrayList<byte[]>(rawData.size());
+        for (var raw : rawData) {
+            items.add(wrapInsert(txContext, raw));
+        }
+        return storage.insertItems(txContext, items);
+    }
+
+    /**
+     * 拼接插入记录的数据，xmin为当前事务，xmax为0
+     */
+    private static byte[] wrapInsert(TransactionContext txContext, byte[] rawData) {
         var data = new byte[rawData.length + 8];
-        // 拼接data
         writeXmin(data, txContext.getXid());
         writeXmax(data, 0);
         writePayload(data, rawData);
-        // 不用检查版本跳跃的原因是，插入本身不用；更新操作必定先删除，而删除检查
-        // 插入记录
-        return storage.insertItem(txContext, data);
+        return data;
     }
 
     @Override
@@ -59,11 +77,14 @@ public class MvccRecordStorage implements IRecordStorage {
                 throw new NeedRollbackException(2, e);
             }
         }
-        // 读取数据
+        // 读取数据。已被清理的版本对所有事务都不可见
         byte[] data;
         try {
             data = storage.queryItemByUuid(recordId);
         } catch (UUIDException e) {
+            if (e.getSubId() == 3) {
+                return Optional.empty();
+            }
             throw new RecordNotFoundException(1, e);
         }
         // 检查可见性
@@ -74,6 +95,73 @@ public class MvccRecordStorage implements IRecordStorage {
         }
     }
 
+    @Override
+    public RecordCursor scan(TransactionContext txContext) {
+        // 元信息的各个版本也是记录，遍历时跳过
+        var metadataIds = new HashSet<Long>();
+        var uuids = storage.getMetadata();
+        for (int st = 0; st + 8 <= uuids.length; st += 8) {
+            metadataIds.add(MvccUtil.readLong(uuids, st));
+        }
+        var cursor = storage.scan();
+        return new RecordCursor() {
+
+            private long recordId;
+
+            private byte[] data;
+
+            @Override
+            public boolean next() {
+                while (cursor.next()) {
+                    var uuid = cursor.getUuid();
+                    if (metadataIds.contains(uuid)) {
+                        continue;
+                    }
+                    byte[] raw;
+                    if (txContext.getIsolation() == TransactionIsolation.SERIALIZABLE) {
+                        // 串行化事务先申请读锁，再重新读取。扫描时复制的版本在加锁前可能已被修改或删除
+                        try {
+                            txContext.sharedLock(uuid, identifiedName);
+                        } catch (DeadlockException e) {
+                            throw new NeedRollbackException(2, e);
+                        }
+                        try {
+                            raw = storage.queryItemByUuid(uuid);
+                        } catch (UUIDException e) {
+                            continue;
+                        }
+                    } else {
+                        var payload = cursor.getPayload();
+                        raw = new byte[payload.remaining()];
+                        payload.get(raw);
+                    }
+                    if (!isVisible(txContext, raw)) {
+                        continue;
+                    }
+                    this.recordId = uuid;
+                    this.data = readPayload(raw);
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public long getRecordId() {
+                return this.recordId;
+            }
+
+            @Override
+            public byte[] getData() {
+                return this.data;
+            }
+
+            @Override
+            public void close() {
+                cursor.close();
+            }
+        };
+    }
+
     @Override
     public void delete(TransactionContext txContext, long recordId) throws RecordNotFoundException {
         // 读取数据
@@ -81,7 +169,7 @@ public class MvccRecordStorage implements IRecordStorage {
         try {
             data = storage.queryItemByUuid(recordId);
         } catch (UUIDException e) {
-            throw new RecordNotFoundException(1, e);
+            throw new RecordNotFoundException(e.getSubId() == 3 ? 2 : 1, e);
         }
         // 判断可见性，若不可见直接返回
         if (!isVisible(txContext, data)) {
@@ -107,6 +195,12 @@ public class MvccRecordStorage implements IRecordStorage {
             log.info("事务 {} 操作记录 {} 发生版本跳跃", txContext.getXid(), recordId);
             throw new NeedRollbackException(1);
         }
+        // 删除本事务自己插入的记录时，该版本对任何事务都不再可见：未提交时其他事务看不到，
+        // 提交后已被删除，回滚后插入无效。因此直接清理，回收其空间
+        if (readXmin(data) == xid) {
+            storage.removeItems(List.of(recordId));
+            return;
+        }
         // 更新记录
         writeXmax(data, xid);
         try {
@@ -116,6 +210,35 @@ public class MvccRecordStorage implements IRecordStorage {
         }
     }
 
+    @Override
+    public long update(TransactionContext txContext, long recordId, byte[] rawData) throws RecordNotFoundException {
+        // 读取数据
+        byte[] data;
+        try {
+            data = storage.queryItemByUuid(recordId);
+        } catch (UUIDException e) {
+            throw new RecordNotFoundException(e.getSubId() == 3 ? 2 : 1, e);
+        }
+        var xid = txContext.getXid();
+        // 记录由本事务插入且未被删除时，其他事务看不到这一版本，直接原地更新，记录ID不变
+        if (xid != 0 && readXmin(data) == xid && readXmax(data) == 0) {
+            try {
+                txContext.exclusiveLock(recordId, this.identifiedName);
+            } catch (DeadlockException e) {
+                throw new NeedRollbackException(2, e);
+            }
+            try {
+                storage.updateItemByUuid(txContext, recordId, wrapInsert(txContext, rawData));
+            } catch (UUIDException e) {
+                throw new RecordNotFoundException(1, e);
+            }
+            return recordId;
+        }
+        // 否则需要保留旧版本
+        delete(txContext, recordId);
+        return insert(txContext, rawData);
+    }
+
     /**
      * 判断可见性
      */
@@ -0,0 +1,36 @@
+package net.kaaass.rumbase.record;
+
+/**
+ * 记录游标，按存储中的物理顺序遍历对事务可见的记录
+ *
+ * @author kaaass
+ */
+public interface RecordCursor extends AutoCloseable {
+
+    /**
+     * 移到下一条可见的记录
+     *
+     * @return 没有更多记录时返回false
+     */
+    boolean next();
+
+    /**
+     * 当前记录的ID
+     *
+     * @return 记录ID
+     */
+    long getRecordId();
+
+    /**
+     * 当前记录的数据
+     *
+     * @return 记录数据字节
+     */
+    byte[] getData();
+
+    /**
+     * 结束遍历
+     */
+    @Override
+    void close();
+}
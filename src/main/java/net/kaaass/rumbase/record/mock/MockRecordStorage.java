@@ -4,10 +4,13 @@ package net.kaaass.rumbase.record.mock;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import net.kaaass.rumbase.record.IRecordStorage;
+import net.kaaass.rumbase.record.RecordCursor;
 import net.kaaass.rumbase.record.exception.RecordNotFoundException;
 import net.kaaass.rumbase.transaction.TransactionContext;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -41,6 +44,15 @@ public class MockRecordStorage implements IRecordStorage {
         return uuid;
     }
 
+    @Override
+    public List<Long> insertAll(TransactionContext txContext, List<byte[]> rawData) {
+        var uuids = new ArrayList<Long>();
+        for (var raw : rawData) {
+            uuids.add(insert(txContext, raw));
+        }
+        return uuids;
+    }
+
     @Override
     public byte[] query(TransactionContext txContext, long recordId) throws RecordNotFoundException {
         if (!this.memoryStorage.containsKey(recordId)) {
@@ -58,6 +70,34 @@ public class MockRecordStorage implements IRecordStorage {
         }
     }
 
+    @Override
+    public RecordCursor scan(TransactionContext txContext) {
+        var entries = new ArrayList<>(this.memoryStorage.entrySet());
+        return new RecordCursor() {
+
+            private int index = -1;
+
+            @Override
+            public boolean next() {
+                return ++index < entries.size();
+            }
+
+            @Override
+            public long getRecordId() {
+                return entries.get(index).getKey();
+            }
+
+            @Override
+            public byte[] getData() {
+                return entries.get(index).getValue();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
     @Override
     public void delete(TransactionContext txContext, long recordId) {
         this.memoryStorage.remove(recordId);
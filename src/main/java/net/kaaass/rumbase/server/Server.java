@@ -6,6 +6,7 @@ import lombok.extern.slf4j.Slf4j;
 import net.kaaass.rumbase.index.exception.IndexAlreadyExistException;
 import net.kaaass.rumbase.page.PageManager;
 import net.kaaass.rumbase.page.exception.FileException;
+import net.kaaass.rumbase.page.exception.PageException;
 import net.kaaass.rumbase.query.exception.ArgumentException;
 import net.kaaass.rumbase.record.exception.RecordNotFoundException;
 import net.kaaass.rumbase.table.TableManager;
@@ -15,9 +16,11 @@ import net.kaaass.rumbase.transaction.TransactionManager;
 import net.kaaass.rumbase.transaction.TransactionManagerImpl;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.SocketTimeoutException;
+import java.util.Properties;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -50,6 +53,14 @@ public class Server {
      * 进行服务器开始前的准备工作
      */
     public void prepare() {
+        // 读取配置
+        log.info("读取配置...");
+        try {
+            loadConfig(CONFIG_FILE);
+        } catch (IOException | PageException | NumberFormatException e) {
+            log.error("读取配置失败", e);
+            System.exit(1);
+        }
         // 准备文件夹
         var tableFolder = new File("data/table/a");
         assert tableFolder.exists() || tableFolder.mkdirs();
@@ -72,12 +83,42 @@ public class Server {
             log.error("初始化表管理器失败", e);
             System.exit(1);
         }
+        // 在后台装入上次运行时的热点页
+        log.info("预热缓冲...");
+        int warmPages = PageManager.loadBufferDump();
+        log.info("后台装入 {} 页", warmPages);
         // 初始化线程池
         log.info("初始化线程池...");
         var namedThreadFactory = Executors.defaultThreadFactory();
         threadPool = new ThreadPoolExecutor(5, 200,
                 0L, TimeUnit.MILLISECONDS,
                 new LinkedBlockingQueue<Runnable>(1024), namedThreadFactory, new ThreadPoolExecutor.AbortPolicy());
+        // 启动后台写回
+        log.info("启动后台写回...");
+        PageManager.startBackgroundWriter();
+    }
+
+    /**
+     * 读取配置文件，文件不存在时使用默认配置
+     * <p>
+     * 页大小与缓冲大小必须在打开任何表文件之前设置。已有文件中记录的页大小与配置不符时，文件会拒绝打开
+     *
+     * @param configFile 配置文件路径
+     */
+    private void loadConfig(String configFile) throws IOException, PageException {
+        var file = new File(configFile);
+        if (!file.exists()) {
+            log.info("配置文件 {} 不存在，使用默认配置", configFile);
+            return;
+        }
+        var properties = new Properties();
+        try (var in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        int pageSize = Integer.parseInt(properties.getProperty("page.size", String.valueOf(PageManager.PAGE_SIZE)).trim());
+        int bufferSize = Integer.parseInt(properties.getProperty("buffer.size", String.valueOf(PageManager.BUFFER_SIZE)).trim());
+        PageManager.configure(pageSize, bufferSize);
+        log.info("页大小 {}，缓冲大小 {} 页", pageSize, bufferSize);
     }
 
     /**
@@ -122,9 +163,16 @@ public class Server {
         activeSession.clear();
         // 释放文件、写回文件
         log.info("正在写回文件...");
+        PageManager.stopBackgroundWriter();
         PageManager.flush();
+        PageManager.dumpBuffer();
     }
 
+    /**
+     * 配置文件路径
+     */
+    private static final String CONFIG_FILE = "rumbase.properties";
+
     private static final Server INSTANCE = new Server();
 
     private Server() {
@@ -191,16 +191,15 @@ public class Table {
 
         var raw = stringEntryToBytes(entry);
 
-        recordStorage.delete(context, uuid);
-        var newUuid = recordStorage.insert(context, raw);
-
+        // 只有被索引的字段需要比较与插入索引
+        var values = new ArrayList<Object>();
         var l = entry.size();
         for (int i = 0; i < l; i++) {
             var field = fields.get(i);
-            if (field.indexed()) {
-                field.insertIndex(entry.get(i), newUuid);
-            }
+            values.add(field.indexed() ? field.strToValue(entry.get(i)) : null);
         }
+
+        updateRaw(context, uuid, raw, values);
     }
 
 
@@ -215,10 +214,45 @@ public class Table {
 
         var raw = entryToBytes(entry);
 
-        recordStorage.delete(context, uuid);
-        var newUuid = recordStorage.insert(context, raw);
+        updateRaw(context, uuid, raw, entry);
+    }
+
+    /**
+     * 以新的字节数据更新元组
+     * <p>
+     * 被索引的字段都没有变化时由记录存储更新，能原地更新时uuid不变，索引无需修改。
+     * 否则删除旧元组并插入新元组，在索引中加入新的uuid。
+     * </p>
+     *
+     * @param context 事务context
+     * @param uuid    元组的uuid
+     * @param raw     新的元组数据
+     * @param entry   新的行的值列表
+     */
+    private void updateRaw(TransactionContext context, long uuid, byte[] raw, List<Object> entry) throws TableConflictException, TableExistenceException, RecordNotFoundException {
+
+        var old = read(context, uuid).orElseThrow(() -> new RecordNotFoundException(2));
 
         var l = entry.size();
+        boolean keyChanged = false;
+        for (int i = 0; i < l && !keyChanged; i++) {
+            var field = fields.get(i);
+            if (field.indexed()) {
+                keyChanged = !sameValue(field, old.get(i), entry.get(i));
+            }
+        }
+
+        long newUuid;
+        if (keyChanged) {
+            recordStorage.delete(context, uuid);
+            newUuid = recordStorage.insert(context, raw);
+        } else {
+            newUuid = recordStorage.update(context, uuid, raw);
+        }
+
+        if (newUuid == uuid) {
+            return;
+        }
         for (int i = 0; i < l; i++) {
             var field = fields.get(i);
             if (field.indexed()) {
@@ -227,6 +261,13 @@ public class Table {
         }
     }
 
+    private static boolean sameValue(BaseField field, Object a, Object b) throws TableConflictException {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return field.compare(a, b) == 0;
+    }
+
 
     /**
      * 检查一个entry是否满足当前表的约束
@@ -307,16 +348,42 @@ public class Table {
      * @return 所有记录
      */
     public List<List<Object>> readAll(TransactionContext context) throws TableExistenceException, TableConflictException, ArgumentException, RecordNotFoundException {
-        var field = getFirstIndexedField();
-        if (field == null) {
-            throw new ArgumentException(2);
-        }
+        return scan(context, false);
+    }
 
+    /**
+     * 读取表所有记录，每条记录的末尾加上其uuid，供更新、删除时使用
+     *
+     * @param context 事务context
+     * @return 所有记录
+     */
+    public List<List<Object>> readAllWithUuid(TransactionContext context) throws TableConflictException {
+        return scan(context, true);
+    }
+
+    /**
+     * 不经过索引，按存储中的物理顺序读取所有对事务可见的记录
+     *
+     * @param context  事务context
+     * @param withUuid 是否在记录末尾加上uuid
+     * @return 所有记录
+     */
+    private List<List<Object>> scan(TransactionContext context, boolean withUuid) throws TableConflictException {
         var rows = new ArrayList<List<Object>>();
-        var iter = searchAll(field.getName());
-        while (iter.hasNext()) {
-            var uuid = iter.next().getUuid();
-            read(context, uuid).ifPresent(rows::add);
+        try (var cursor = recordStorage.scan(context)) {
+            while (cursor.next()) {
+                List<Object> row;
+                try {
+                    row = parseEntry(cursor.getData());
+                } catch (IOException e) {
+                    // 查询到的entry和当前表冲突
+                    throw new TableConflictException(3);
+                }
+                if (withUuid) {
+                    row.add(cursor.getRecordId());
+                }
+                rows.add(row);
+            }
         }
         return rows;
     }
@@ -334,19 +401,14 @@ public class Table {
 
         var uuid = recordStorage.insert(context, bytes);
 
+        // 没有索引的表由顺序扫描读出，不需要索引
         var l = entry.size();
-        boolean ok = false;
         for (int i = 0; i < l; i++) {
             var field = fields.get(i);
             if (field.indexed()) {
                 field.insertIndex(entry.get(i), uuid);
-                ok = true;
             }
         }
-
-        if (!ok) {
-            throw new ArgumentException(2);
-        }
     }
 
     /**
@@ -29,9 +29,9 @@ import java.util.concurrent.locks.ReentrantLock;
 public class TransactionManagerImpl implements TransactionManager {
 
     /**
-     * 每页最大事务状态数
+     * 每页最大事务状态数，每个事务占2字节
      */
-    private static final int TX_NUM_PER_PAGE = 2048;
+    private final int txNumPerPage;
     /**
      * 事务状态持久化文件名
      */
@@ -76,8 +76,14 @@ public class TransactionManagerImpl implements TransactionManager {
             // 初始化storage
             this.storage = PageManager.fromFile(LOG_FILE_NAME);
             // 从日志文件里获取事务数量
-            JBBPBitInputStream stream = new JBBPBitInputStream(storage.get(0).getData());
-            int size = stream.readInt(JBBPByteOrder.BIG_ENDIAN);
+            Page header = storage.get(0);
+            int size;
+            try {
+                JBBPBitInputStream stream = new JBBPBitInputStream(header.getData());
+                size = stream.readInt(JBBPByteOrder.BIG_ENDIAN);
+            } finally {
+                header.unpin();
+            }
             log.info("Initial size : {}", size);
             // 初始化SIZE
             this.SIZE = new AtomicInteger(size);
@@ -87,7 +93,7 @@ public class TransactionManagerImpl implements TransactionManager {
             // 初始化SIZE
             this.SIZE = new AtomicInteger(0);
         }
-
+        this.txNumPerPage = storage.getPageSize() / 2;
     }
 
     /**
@@ -119,7 +125,6 @@ public class TransactionManagerImpl implements TransactionManager {
 
         // 进行持久化
         Page page = storage.get(0);
-        page.pin();
         sizeWriteLock.lock();
         try {
             // 转换数据
@@ -153,14 +158,13 @@ public class TransactionManagerImpl implements TransactionManager {
      * @param isolation 事务隔离度
      */
     private void writeTransactionIsolation(int xid, TransactionIsolation isolation) {
-        int pageId = xid / TX_NUM_PER_PAGE + 1;
-        int offset = xid % TX_NUM_PER_PAGE * 2 + 1;
+        int pageId = xid / txNumPerPage + 1;
+        int offset = xid % txNumPerPage * 2 + 1;
 
         log.info("Xid : {}", xid);
         log.info("Page id : {}", pageId);
         log.info("offset : {}", offset);
         Page page = storage.get(pageId);
-        page.pin();
         try {
             byte[] data = new byte[1];
             data[0] = (byte) isolation.getIsolationId();
@@ -181,11 +185,10 @@ public class TransactionManagerImpl implements TransactionManager {
      */
     @Override
     public void changeTransactionStatus(int xid, TransactionStatus status) {
-        int pageId = xid / TX_NUM_PER_PAGE + 1;
-        int offset = xid % TX_NUM_PER_PAGE * 2;
+        int pageId = xid / txNumPerPage + 1;
+        int offset = xid % txNumPerPage * 2;
 
         Page page = storage.get(pageId);
-        page.pin();
         try {
             byte[] data = new byte[1];
             data[0] = status.getStatusId();
@@ -215,12 +218,11 @@ public class TransactionManagerImpl implements TransactionManager {
             return txCache.get(xid);
         }
 
-        int pageId = xid / TX_NUM_PER_PAGE + 1;
-        int statusOffset = xid % TX_NUM_PER_PAGE * 2;
-        int isolationOffset = xid % TX_NUM_PER_PAGE * 2 + 1;
+        int pageId = xid / txNumPerPage + 1;
+        int statusOffset = xid % txNumPerPage * 2;
+        int isolationOffset = xid % txNumPerPage * 2 + 1;
 
         Page page = storage.get(pageId);
-        page.pin();
         byte[] bytes = page.getDataBytes();
         byte statusId = bytes[statusOffset];
         byte isolationId = bytes[isolationOffset];
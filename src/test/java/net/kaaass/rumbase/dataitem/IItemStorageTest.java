@@ -13,11 +13,18 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -120,6 +127,255 @@ public class IItemStorageTest {
 
     }
 
+    /**
+     * 测试新旧两种格式的UUID混合在同一页中
+     */
+    @Test
+    public void testSlotAddressedUuid() throws FileException, IOException, PageException, UUIDException {
+        String fileName = PATH + "testSlotAddressedUuid.db";
+        IItemStorage iItemStorage = ItemManager.fromFile(fileName);
+        TransactionContext txContext = TransactionContext.empty();
+        // 旧格式的UUID，低32位为非负随机数
+        long legacy = (1L << 32) + 12345;
+        iItemStorage.insertItemWithUuid(txContext, new byte[]{9}, legacy);
+        var uuids = new ArrayList<Long>();
+        for (int i = 0; i < 10; i++) {
+            uuids.add(iItemStorage.insertItem(txContext, new byte[]{(byte) i}));
+        }
+        assertArrayEquals(new byte[]{9}, iItemStorage.queryItemByUuid(legacy));
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(new byte[]{(byte) i}, iItemStorage.queryItemByUuid(uuids.get(i)));
+        }
+        // 下标超出页内数据项个数的UUID不存在
+        try {
+            iItemStorage.queryItemByUuid((uuids.get(9) & ~0xFFFFL) | 0x7FFF);
+            fail("should get exception");
+        } catch (UUIDException ignore) {
+        }
+    }
+
+    /**
+     * 测试恢复记录下标的UUID时放在其记录的下标处，之后的插入不会与其冲突
+     */
+    @Test
+    public void testRecoverSlotAddressedUuid() throws FileException, IOException, PageException, UUIDException {
+        String fileName = PATH + "testRecoverSlotAddressedUuid.db";
+        IItemStorage iItemStorage = ItemManager.fromFile(fileName);
+        TransactionContext txContext = TransactionContext.empty();
+        // 第1页第3个数据项标志，代数为1
+        long recovered = 0x1_80010003L;
+        iItemStorage.insertItemWithUuid(txContext, new byte[]{42}, recovered);
+        var uuids = new ArrayList<Long>();
+        for (int i = 0; i < 4; i++) {
+            uuids.add(iItemStorage.insertItem(txContext, new byte[]{(byte) i}));
+        }
+        assertFalse(uuids.contains(recovered));
+        assertArrayEquals(new byte[]{42}, iItemStorage.queryItemByUuid(recovered));
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(new byte[]{(byte) i}, iItemStorage.queryItemByUuid(uuids.get(i)));
+        }
+        // 再次恢复已存在的数据项不改变其内容
+        iItemStorage.insertItemWithUuid(txContext, new byte[]{7}, recovered);
+        assertArrayEquals(new byte[]{42}, iItemStorage.queryItemByUuid(recovered));
+        // 第0个数据项标志已被代数为1的数据项占用，拒绝恢复代数为2的数据项
+        try {
+            iItemStorage.insertItemWithUuid(txContext, new byte[]{7}, 0x1_80020000L);
+            fail("should get exception");
+        } catch (PageCorruptedException ignore) {
+        }
+    }
+
+    /**
+     * 测试插入时通过空闲空间表使用之前页中剩余的空间
+     */
+    @Test
+    public void testFreeSpaceReuse() throws FileException, IOException, PageException, UUIDException {
+        String fileName = PATH + "testFreeSpaceReuse.db";
+        IItemStorage iItemStorage = ItemManager.fromFile(fileName);
+        TransactionContext txContext = TransactionContext.empty();
+        long uuid;
+        do {
+            uuid = iItemStorage.insertItem(txContext, new byte[400]);
+        } while (uuid >> 32 == 1);
+        // 第1页放不下更多400字节的数据项，但还能放下一个300字节的
+        do {
+            uuid = iItemStorage.insertItem(txContext, new byte[300]);
+        } while (uuid >> 32 == 2);
+        // 第2页写满后，先使用第1页剩余的空间，而不是分配新页
+        assertEquals(1, uuid >> 32);
+        assertArrayEquals(new byte[300], iItemStorage.queryItemByUuid(uuid));
+    }
+
+    /**
+     * 测试删除数据项，其余数据项的uuid不变，删除后的空间可以再次插入
+     */
+    @Test
+    public void testRemoveItems() throws FileException, IOException, PageException, UUIDException {
+        String fileName = PATH + "testRemoveItems.db";
+        IItemStorage iItemStorage = ItemManager.fromFile(fileName);
+        TransactionContext txContext = TransactionContext.empty();
+        var uuids = new ArrayList<Long>();
+        long uuid;
+        do {
+            var item = new byte[400];
+            item[0] = (byte) uuids.size();
+            uuid = iItemStorage.insertItem(txContext, item);
+            uuids.add(uuid);
+        } while (uuid >> 32 == 1);
+        uuids.remove(uuids.size() - 1);
+        // 删除第1页中下标为偶数的数据项
+        var removed = new ArrayList<Long>();
+        for (int i = 0; i < uuids.size(); i += 2) {
+            removed.add(uuids.get(i));
+        }
+        iItemStorage.removeItems(removed);
+        for (int i = 0; i < uuids.size(); i++) {
+            if (i % 2 == 0) {
+                try {
+                    iItemStorage.queryItemByUuid(uuids.get(i));
+                    fail("removed item should not be found");
+                } catch (UUIDException e) {
+                    log.info("Expected exception: ", e);
+                }
+            } else {
+                assertEquals((byte) i, iItemStorage.queryItemByUuid(uuids.get(i))[0]);
+            }
+        }
+        assertEquals(uuids.size() / 2, iItemStorage.listItemByPageId(1).size());
+        // 再次插入时使用第1页空出的空间，旧的uuid仍然不存在
+        do {
+            uuid = iItemStorage.insertItem(txContext, new byte[400]);
+        } while (uuid >> 32 == 2);
+        assertEquals(1, uuid >> 32);
+        assertFalse(removed.contains(uuid));
+        assertArrayEquals(new byte[400], iItemStorage.queryItemByUuid(uuid));
+        for (long r : removed) {
+            try {
+                iItemStorage.queryItemByUuid(r);
+                fail("removed item should not be found");
+            } catch (UUIDException e) {
+                log.info("Expected exception: ", e);
+            }
+        }
+        // 删除大数据项时回收其溢出页
+        var large = iItemStorage.insertItem(txContext, new byte[10000]);
+        iItemStorage.removeItems(List.of(large));
+        try {
+            iItemStorage.queryItemByUuid(large);
+            fail("removed item should not be found");
+        } catch (UUIDException e) {
+            log.info("Expected exception: ", e);
+        }
+    }
+
+    /**
+     * 测试数据项标志复用达到代数上限后不再复用，旧的uuid不会重新出现
+     */
+    @Test
+    public void testSlotGenerationLimit() throws FileException, IOException, PageException {
+        String fileName = PATH + "testSlotGenerationLimit.db";
+        IItemStorage iItemStorage = ItemManager.fromFile(fileName);
+        TransactionContext txContext = TransactionContext.empty();
+        var first = iItemStorage.insertItem(txContext, new byte[]{1});
+        iItemStorage.removeItems(List.of(first));
+        var seen = new HashSet<Long>();
+        seen.add(first);
+        long uuid = first;
+        // 同一数据项标志最多使用MAX_GENERATION次
+        for (int i = 1; i <= SlottedPage.MAX_GENERATION; i++) {
+            uuid = iItemStorage.insertItem(txContext, new byte[]{1});
+            assertTrue("uuid should not repeat", seen.add(uuid));
+            iItemStorage.removeItems(List.of(uuid));
+        }
+        assertEquals(first >> 32, uuid >> 32);
+        assertNotEquals(first & SlottedPage.MAX_SLOT, uuid & SlottedPage.MAX_SLOT);
+        try {
+            iItemStorage.queryItemByUuid(first);
+            fail("removed item should not be found");
+        } catch (UUIDException e) {
+            assertEquals(3, e.getSubId());
+        }
+    }
+
+    /**
+     * 测试批量插入，数据项跨越多个页
+     */
+    @Test
+    public void testInsertItems() throws FileException, IOException, PageException, UUIDException {
+        String fileName = PATH + "testInsertItems.db";
+        IItemStorage iItemStorage = ItemManager.fromFile(fileName);
+        TransactionContext txContext = TransactionContext.empty();
+        var items = new ArrayList<byte[]>();
+        for (int i = 0; i < 2000; i++) {
+            items.add(new byte[]{(byte) i, (byte) (i >> 8), 3, 4});
+        }
+        var uuids = iItemStorage.insertItems(txContext, items);
+        assertEquals(items.size(), uuids.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertArrayEquals(items.get(i), iItemStorage.queryItemByUuid(uuids.get(i)));
+        }
+        // 同一页中的数据项按插入顺序排列
+        int firstPage = (int) (uuids.get(0) >> 32);
+        var onFirstPage = iItemStorage.listItemByPageId(firstPage);
+        for (int i = 0; i < onFirstPage.size(); i++) {
+            assertArrayEquals(items.get(i), onFirstPage.get(i));
+        }
+    }
+
+    /**
+     * 测试大数据项的插入、读取与更新
+     */
+    @Test
+    public void testLargeItem() throws FileException, IOException, PageException, UUIDException {
+        String fileName = PATH + "testLargeItem.db";
+        IItemStorage iItemStorage = ItemManager.fromFile(fileName);
+        TransactionContext txContext = TransactionContext.empty();
+        var large = new byte[100000];
+        new Random(1).nextBytes(large);
+        var uuids = iItemStorage.insertItems(txContext, List.of(new byte[]{1}, large, new byte[512]));
+        assertArrayEquals(new byte[]{1}, iItemStorage.queryItemByUuid(uuids.get(0)));
+        assertArrayEquals(large, iItemStorage.queryItemByUuid(uuids.get(1)));
+        assertArrayEquals(new byte[512], iItemStorage.queryItemByUuid(uuids.get(2)));
+        // 以流的方式读取
+        try (var in = iItemStorage.queryItemStreamByUuid(uuids.get(1))) {
+            assertArrayEquals(large, in.readAllBytes());
+        }
+        // 大数据项所在页的列举结果包含完整的数据
+        var items = iItemStorage.listItemByPageId((int) (uuids.get(1) >> 32));
+        assertArrayEquals(large, items.get(1));
+        // 更新后长度变化，溢出页链随之调整
+        var smaller = Arrays.copyOf(large, 30000);
+        smaller[0]++;
+        iItemStorage.updateItemByUuid(txContext, uuids.get(1), smaller);
+        assertArrayEquals(smaller, iItemStorage.queryItemByUuid(uuids.get(1)));
+        var larger = Arrays.copyOf(large, 200000);
+        iItemStorage.updateItemByUuid(txContext, uuids.get(1), larger);
+        assertArrayEquals(larger, iItemStorage.queryItemByUuid(uuids.get(1)));
+    }
+
+    /**
+     * 测试以流的方式读取大数据项时，溢出页链被改写会被发现，而不是返回拼接出的数据
+     */
+    @Test
+    public void testLargeItemStreamModified() throws FileException, IOException, PageException, UUIDException {
+        String fileName = PATH + "testLargeItemStreamModified.db";
+        IItemStorage iItemStorage = ItemManager.fromFile(fileName);
+        TransactionContext txContext = TransactionContext.empty();
+        var large = new byte[100000];
+        new Random(2).nextBytes(large);
+        long uuid = iItemStorage.insertItem(txContext, large);
+        try (var in = iItemStorage.queryItemStreamByUuid(uuid)) {
+            assertEquals(large[0], (byte) in.read());
+            // 长度不变的更新复用原有的溢出页
+            var updated = large.clone();
+            updated[0]++;
+            iItemStorage.updateItemByUuid(txContext, uuid, updated);
+            in.readAllBytes();
+            fail("should get exception");
+        } catch (PageCorruptedException ignore) {
+        }
+    }
+
     /**
      * 对插入大量数据进行测试
      */
@@ -221,6 +477,36 @@ public class IItemStorageTest {
     }
 
 
+    /**
+     * 测试并发插入得到的UUID互不相同且都能读出
+     */
+    @Test
+    public void testConcurrentInsert() throws IOException, FileException, PageException, InterruptedException, UUIDException {
+        String fileName = PATH + "testConcurrentInsert.db";
+        IItemStorage iItemStorage = ItemManager.fromFile(fileName);
+        TransactionContext txContext = TransactionContext.empty();
+        var uuids = new ConcurrentHashMap<Long, byte[]>();
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final int id = t;
+            var thread = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    var bytes = new byte[]{(byte) id, (byte) i, (byte) (i >> 8)};
+                    uuids.put(iItemStorage.insertItem(txContext, bytes), bytes);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        assertEquals(8 * 500, uuids.size());
+        for (var entry : uuids.entrySet()) {
+            assertArrayEquals(entry.getValue(), iItemStorage.queryItemByUuid(entry.getKey()));
+        }
+    }
+
     /**
      * 对更新进行测试
      */
@@ -249,6 +535,93 @@ public class IItemStorageTest {
         }
     }
 
+    /**
+     * 测试更新时改变数据项长度，页内放不下时移到其他页，UUID不变
+     */
+    @Test
+    public void testResizeUpdate() throws FileException, IOException, PageException, UUIDException {
+        String fileName = PATH + "testResizeUpdate.db";
+        TransactionContext txContext = TransactionContext.empty();
+        IItemStorage iItemStorage = ItemManager.fromFile(fileName);
+        var uuids = new ArrayList<Long>();
+        long uuid;
+        do {
+            uuid = iItemStorage.insertItem(txContext, new byte[400]);
+            uuids.add(uuid);
+        } while (uuid >> 32 == 1);
+        long other = uuids.remove(uuids.size() - 1);
+        // 逐个变长，第1页的空间用完后，之后的数据项被移到其他页
+        for (int i = 0; i < uuids.size(); i++) {
+            var item = new byte[500];
+            Arrays.fill(item, (byte) i);
+            iItemStorage.updateItemByUuid(txContext, uuids.get(i), item);
+        }
+        for (int i = 0; i < uuids.size(); i++) {
+            var item = new byte[500];
+            Arrays.fill(item, (byte) i);
+            assertArrayEquals(item, iItemStorage.queryItemByUuid(uuids.get(i)));
+        }
+        assertEquals(uuids.size(), iItemStorage.listItemByPageId(1).size());
+        assertArrayEquals(new byte[400], iItemStorage.queryItemByUuid(other));
+        assertEquals(1, iItemStorage.listItemByPageId(2).size());
+        // 变短后移回原来的页
+        for (int i = 0; i < uuids.size(); i++) {
+            iItemStorage.updateItemByUuid(txContext, uuids.get(i), new byte[]{(byte) i});
+        }
+        for (int i = 0; i < uuids.size(); i++) {
+            assertArrayEquals(new byte[]{(byte) i}, iItemStorage.queryItemByUuid(uuids.get(i)));
+        }
+        assertEquals(uuids.size(), iItemStorage.listItemByPageId(1).size());
+        // 删除后不再能查到
+        iItemStorage.removeItems(uuids);
+        assertEquals(0, iItemStorage.listItemByPageId(1).size());
+        assertArrayEquals(new byte[400], iItemStorage.queryItemByUuid(other));
+    }
+
+    /**
+     * 测试按页顺序遍历所有数据项
+     */
+    @Test
+    public void testScan() throws FileException, IOException, PageException, UUIDException {
+        String fileName = PATH + "testScan.db";
+        TransactionContext txContext = TransactionContext.empty();
+        IItemStorage iItemStorage = ItemManager.fromFile(fileName);
+        iItemStorage.setMetadata(txContext, new byte[]{1, 2, 3});
+        var expected = new ConcurrentHashMap<Long, byte[]>();
+        for (int i = 0; i < 500; i++) {
+            var item = new byte[i % 7 == 0 ? 2000 : 100];
+            Arrays.fill(item, (byte) i);
+            expected.put(iItemStorage.insertItem(txContext, item), item);
+        }
+        // 删除、变长移动后的数据项
+        var uuids = new ArrayList<>(expected.keySet());
+        for (int i = 0; i < 50; i++) {
+            iItemStorage.removeItems(List.of(uuids.get(i)));
+            expected.remove(uuids.get(i));
+        }
+        for (int i = 50; i < 100; i++) {
+            var item = new byte[450];
+            iItemStorage.updateItemByUuid(txContext, uuids.get(i), item);
+            expected.put(uuids.get(i), item);
+        }
+        iItemStorage.setMetadata(txContext, new byte[]{4, 5, 6});
+        long last = 0;
+        int count = 0;
+        try (var cursor = iItemStorage.scan()) {
+            while (cursor.next()) {
+                long uuid = cursor.getUuid();
+                assertTrue("scan in page order", uuid >> 32 >= last >> 32);
+                last = uuid;
+                var payload = new byte[cursor.getPayload().remaining()];
+                cursor.getPayload().get(payload);
+                assertArrayEquals(expected.get(uuid), payload);
+                count++;
+            }
+        }
+        assertEquals(expected.size(), count);
+        assertArrayEquals(new byte[]{4, 5, 6}, iItemStorage.getMetadata());
+    }
+
     /**
      * 测试修改和获取表头信息
      */
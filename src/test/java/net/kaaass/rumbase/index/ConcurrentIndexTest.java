@@ -10,6 +10,8 @@ import org.junit.Test;
 
 import java.io.File;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class ConcurrentIndexTest {
@@ -130,4 +132,106 @@ public class ConcurrentIndexTest {
             cnt++;
         }
     }
+
+    /**
+     * 测试插入的同时进行查询，已插入的数据总能被查到
+     */
+    @Test
+    public void testQueryDuringInsert() throws InterruptedException {
+        Index testIndex = null;
+        try {
+            new File(fileDir + "ConcurrenttestQuery$id").deleteOnExit();
+            testIndex = Index.createEmptyIndex(fileDir + "ConcurrenttestQuery$id");
+        } catch (IndexAlreadyExistException e) {
+            log.error("Exception Error :", e);
+        }
+        assert testIndex != null;
+
+        Index finalTestIndex = testIndex;
+        var inserted = new AtomicInteger(-1);
+        var failed = new AtomicBoolean(false);
+        Thread writer = new Thread(() -> {
+            // 打乱插入顺序，使分裂发生在树的各个位置
+            for (int i = 0; i <= 8000; i++) {
+                long key = (i * 7919L) % 8001;
+                finalTestIndex.insert(key, key + 100000);
+                inserted.set(i);
+            }
+        });
+        Thread[] readers = new Thread[3];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                var random = new Random();
+                while (inserted.get() < 8000 && !failed.get()) {
+                    int done = inserted.get();
+                    if (done < 0) {
+                        continue;
+                    }
+                    long key = (random.nextInt(done + 1) * 7919L) % 8001;
+                    var res = finalTestIndex.query(key);
+                    if (res.size() != 1 || res.get(0) != key + 100000) {
+                        log.error("query {} got {}", key, res);
+                        failed.set(true);
+                    }
+                }
+            });
+        }
+        writer.start();
+        for (var reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (var reader : readers) {
+            reader.join();
+        }
+        Assert.assertFalse(failed.get());
+    }
+
+    /**
+     * 测试多个线程同时插入，分裂发生在树的各个位置，插入的数据都能被查到且有序
+     */
+    @Test
+    public void testConcurrentInsert() throws InterruptedException {
+        Index testIndex = null;
+        try {
+            new File(fileDir + "ConcurrenttestInsert$id").deleteOnExit();
+            testIndex = Index.createEmptyIndex(fileDir + "ConcurrenttestInsert$id");
+        } catch (IndexAlreadyExistException e) {
+            log.error("Exception Error :", e);
+        }
+        assert testIndex != null;
+
+        Index finalTestIndex = testIndex;
+        int keyNum = 12000;
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            final int first = t;
+            writers[t] = new Thread(() -> {
+                // 每个线程插入互不相同的key，打乱插入顺序
+                for (int i = first; i < keyNum; i += writers.length) {
+                    long key = (i * 7919L) % keyNum;
+                    finalTestIndex.insert(key, key + 100000);
+                }
+            });
+        }
+        for (var writer : writers) {
+            writer.start();
+        }
+        for (var writer : writers) {
+            writer.join();
+        }
+
+        // 测试数据是否符合预期
+        for (long key = 0; key < keyNum; key++) {
+            var res = testIndex.query(key);
+            Assert.assertEquals(1, res.size());
+            Assert.assertEquals(key + 100000, (long) res.get(0));
+        }
+        int cnt = 0;
+        for (var pair : testIndex) {
+            Assert.assertEquals(cnt, pair.getKey());
+            cnt++;
+        }
+        Assert.assertEquals(keyNum, cnt);
+    }
 }
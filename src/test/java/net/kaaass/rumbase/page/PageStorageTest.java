@@ -10,8 +10,17 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertArrayEquals;
 
@@ -43,18 +52,14 @@ public class PageStorageTest {
             e.printStackTrace();
         }
         assert rps != null;
+        Page[] pinned = new Page[10];
         for (int i = 0; i < 10; i++) {
-            Page p = rps.get(i);
-            p.pin();
+            pinned[i] = rps.get(i);
         }
-        Page p0 = rps.get(0);
-        Page p1 = rps.get(1);
-        p0.unpin();
-        p1.unpin();
+        pinned[0].unpin();
+        pinned[1].unpin();
         Page p10 = rps.get(10);
-        p10.pin();
         Page p11 = rps.get(11);
-        p11.pin();
 
         File file = new File(filePath);
         try {
@@ -85,7 +90,6 @@ public class PageStorageTest {
             Arrays.fill(data, (byte) (0xF0 | pageId));
             // 获取页
             var page = storage.get(pageId);
-            page.pin();
             // 写入页
             try {
                 // 写数据
@@ -95,7 +99,7 @@ public class PageStorageTest {
                 page.unpin();
             }
             // 检查页数据
-            var tempStorage = PageManager.fromFile(filePath);
+            var tempStorage = new RumPageStorage(filePath);
             var pageData = tempStorage.get(pageId).getDataBytes();
             assertArrayEquals(data, pageData);
         }
@@ -113,9 +117,6 @@ public class PageStorageTest {
         Page p0 = rps.get(0);
         Page p3 = rps.get(3);
         Page p4 = rps.get(4);
-        p0.pin();
-        p3.pin();
-        p4.pin();
         byte[] data0 = new byte[PageManager.PAGE_SIZE];
         byte[] data3 = new byte[PageManager.PAGE_SIZE];
         byte[] data4 = new byte[PageManager.PAGE_SIZE];
@@ -180,7 +181,6 @@ public class PageStorageTest {
             Arrays.fill(data, (byte) (0xF0 | pageId));
             // 获取页
             var page = storage.get(pageId);
-            page.pin();
             // 写入页
             try {
                 // 写数据
@@ -196,11 +196,10 @@ public class PageStorageTest {
             Arrays.fill(data, (byte) (0xF0 | pageId));
             // 获取页
             var page = storage.get(pageId);
-            page.pin();
             // 写入页
             try {
                 // 检查页数据
-                var tempStorage = PageManager.fromFile(filePath);
+                var tempStorage = new RumPageStorage(filePath);
                 var pageData = tempStorage.get(pageId).getDataBytes();
                 assertArrayEquals(data, pageData);
             } finally {
@@ -209,4 +208,359 @@ public class PageStorageTest {
 
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConcurrentGet() throws InterruptedException {
+        PageStorage storage = null;
+        try {
+            storage = PageManager.fromFile(filePath);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        assert storage != null;
+        // 多个线程同时获取同一页，应当得到同一个页对象
+        final PageStorage rps = storage;
+        var pages = ConcurrentHashMap.<Page>newKeySet();
+        var start = new CountDownLatch(1);
+        var threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                var page = rps.get(20);
+                pages.add(page);
+                page.unpin();
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (var thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(1, pages.size());
+        var page = rps.get(20);
+        try {
+            Assert.assertSame(page, pages.iterator().next());
+        } finally {
+            page.unpin();
+        }
+    }
+
+    @Test
+    public void testConcurrentEviction() throws FileException, InterruptedException {
+        String path = FileUtil.TEST_PATH + "evictPageTest.db";
+        var storage = PageManager.fromFile(path);
+        // 页数超过缓冲大小，获取与换出交替发生。获取到的页在unpin之前不能被换出，否则写入会落到其他页的帧中
+        int pageNum = PageManager.BUFFER_SIZE * 2;
+        int threadNum = 4;
+        int roundNum = 3;
+        var failed = new AtomicBoolean(false);
+        var threads = new Thread[threadNum];
+        for (int i = 0; i < threadNum; i++) {
+            final int first = i;
+            threads[i] = new Thread(() -> {
+                for (int round = 0; round < roundNum; round++) {
+                    for (int pageId = first; pageId < pageNum; pageId += threadNum) {
+                        var page = storage.get(pageId);
+                        try {
+                            page.putInt(0, pageId);
+                            page.putInt(4, round);
+                            if (page.getInt(0) != pageId) {
+                                failed.set(true);
+                            }
+                        } catch (PageException e) {
+                            failed.set(true);
+                        } finally {
+                            page.unpin();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        Assert.assertFalse(failed.get());
+        storage.flush();
+        for (int pageId = 0; pageId < pageNum; pageId++) {
+            var page = storage.get(pageId);
+            try {
+                Assert.assertEquals(pageId, page.getInt(0));
+                Assert.assertEquals(roundNum - 1, page.getInt(4));
+            } finally {
+                page.unpin();
+            }
+        }
+    }
+
+    @Test
+    public void testMappedStorage() throws FileException, PageException {
+        String mappedPath = FileUtil.TEST_PATH + "mappedPageTest.db";
+        PageStorage storage = PageManager.fromFile(mappedPath, PageStorage.Mode.MAPPED);
+        int[] testPage = new int[]{0, 1, 7, 5000};
+        for (var pageId : testPage) {
+            byte[] data = new byte[PageManager.PAGE_SIZE];
+            Arrays.fill(data, (byte) (0xF0 | pageId));
+            var page = storage.get(pageId);
+            try {
+                page.patchData(0, data);
+            } finally {
+                page.unpin();
+            }
+            assertArrayEquals(data, storage.get(pageId).getDataBytes());
+        }
+        storage.flush();
+        // 映射页存储与缓冲页存储的文件格式一致
+        var tempStorage = new RumPageStorage(mappedPath);
+        for (var pageId : testPage) {
+            byte[] data = new byte[PageManager.PAGE_SIZE];
+            Arrays.fill(data, (byte) (0xF0 | pageId));
+            assertArrayEquals(data, tempStorage.get(pageId).getDataBytes());
+        }
+    }
+
+    @Test
+    public void testBackgroundWriter() throws FileException, PageException, IOException, InterruptedException {
+        String path = FileUtil.TEST_PATH + "writerTest.db";
+        var storage = PageManager.fromFile(path);
+        byte[] data = new byte[PageManager.PAGE_SIZE];
+        Arrays.fill(data, (byte) 0x5A);
+        for (int pageId = 0; pageId < 4; pageId++) {
+            var page = storage.get(pageId);
+            try {
+                page.writeData(data);
+            } finally {
+                page.unpin();
+            }
+        }
+        long interval = PageManager.WRITER_INTERVAL;
+        PageManager.WRITER_INTERVAL = 10;
+        PageManager.startBackgroundWriter();
+        try {
+            // 不调用flush，脏页也会被后台写回文件
+            byte[] fromFile = new byte[PageManager.PAGE_SIZE];
+            for (int i = 0; i < 200; i++) {
+                Thread.sleep(10);
+                try (var in = new FileInputStream(path)) {
+                    in.skip((3 + PageManager.FILE_HEAD_SIZE) * PageManager.PAGE_SIZE);
+                    in.read(fromFile);
+                }
+                if (Arrays.equals(data, fromFile)) {
+                    break;
+                }
+            }
+            assertArrayEquals(data, fromFile);
+        } finally {
+            PageManager.stopBackgroundWriter();
+            PageManager.WRITER_INTERVAL = interval;
+        }
+    }
+
+    @Test
+    public void testPrefetch() throws FileException, PageException, InterruptedException {
+        String path = FileUtil.TEST_PATH + "prefetchTest.db";
+        var storage = PageManager.fromFile(path);
+        for (int pageId = 0; pageId < 32; pageId++) {
+            byte[] data = new byte[PageManager.PAGE_SIZE];
+            Arrays.fill(data, (byte) pageId);
+            var page = storage.get(pageId);
+            try {
+                page.writeData(data);
+            } finally {
+                page.unpin();
+            }
+        }
+        storage.flush();
+        // 以新的页存储打开，缓冲中没有它的页
+        var reopened = new RumPageStorage(path);
+        long length = new File(path).length();
+        reopened.prefetch(0, 32);
+        reopened.prefetch(new long[]{40, 100});
+        var buffer = RumBuffer.getInstance();
+        for (int i = 0; i < 200 && !buffer.contains(reopened, 31); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(buffer.contains(reopened, 31));
+        // 预读不会扩展文件
+        Assert.assertEquals(length, new File(path).length());
+        for (int pageId = 0; pageId < 32; pageId++) {
+            var page = reopened.get(pageId);
+            try {
+                Assert.assertEquals(pageId, page.getDataBytes()[0]);
+            } finally {
+                page.unpin();
+            }
+        }
+    }
+
+    @Test
+    public void testGetAsync() throws Exception {
+        String path = FileUtil.TEST_PATH + "asyncTest.db";
+        var storage = PageManager.fromFile(path);
+        for (int pageId = 0; pageId < 40; pageId++) {
+            byte[] data = new byte[PageManager.PAGE_SIZE];
+            Arrays.fill(data, (byte) pageId);
+            var page = storage.get(pageId);
+            try {
+                page.writeData(data);
+            } finally {
+                page.unpin();
+            }
+        }
+        storage.flush();
+        var reopened = new RumPageStorage(path);
+        // 乱序且含重复的页号，相邻的页会被合并读取
+        long[] pageIds = {5, 3, 4, 39, 0, 1, 2, 4, 20, 21, 22, 23};
+        var pages = reopened.getAll(pageIds).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(pageIds.length, pages.size());
+        for (int i = 0; i < pageIds.length; i++) {
+            var page = pages.get(i);
+            try {
+                Assert.assertEquals(pageIds[i], page.getDataBytes()[PageManager.PAGE_SIZE - 1]);
+            } finally {
+                page.unpin();
+            }
+        }
+        // 超出文件范围的页与普通的获取一样会扩展文件
+        var page = reopened.getAsync(100).get(5, TimeUnit.SECONDS);
+        try {
+            Assert.assertEquals(0, page.getDataBytes()[0]);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    @Test
+    public void testFreePage() throws FileException {
+        String path = FileUtil.TEST_PATH + "freePageTest.db";
+        var storage = PageManager.fromFile(path);
+        Assert.assertEquals(-1, storage.reusePage());
+        storage.freePage(7);
+        storage.freePage(3);
+        // 重复回收只记一次
+        storage.freePage(3);
+        Assert.assertEquals(3, storage.reusePage());
+        Assert.assertEquals(7, storage.reusePage());
+        Assert.assertEquals(-1, storage.reusePage());
+        // 位图保存在文件头中，重新打开后仍然有效
+        storage.freePage(5);
+        storage.flush();
+        var reopened = new RumPageStorage(path);
+        Assert.assertEquals(5, reopened.reusePage());
+        Assert.assertEquals(-1, reopened.reusePage());
+        // 文件头不影响页数据
+        var page = reopened.get(0);
+        try {
+            Assert.assertEquals(0, page.getDataBytes()[0]);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    @Test
+    public void testPageSizeRecorded() throws IOException {
+        String path = FileUtil.TEST_PATH + "pageSizeTest.db";
+        try (var out = new FileOutputStream(path)) {
+            // 以8KB页创建的文件
+            out.write(new byte[]{0x52, 0x55, 0x4D, 0x42, 0, 0, 0x20, 0});
+        }
+        try {
+            PageManager.fromFile(path);
+            Assert.fail("should get exception");
+        } catch (FileException ignore) {
+        }
+    }
+
+    @Test
+    public void testConfigure() {
+        try {
+            PageManager.configure(4096 * 3, 100);
+            Assert.fail("should get exception");
+        } catch (PageException ignore) {
+        }
+        try {
+            PageManager.configure(PageManager.PAGE_SIZE, 0);
+            Assert.fail("should get exception");
+        } catch (PageException ignore) {
+        }
+    }
+
+    @Test
+    public void testBufferDump() throws Exception {
+        String path = FileUtil.TEST_PATH + "dumpTest.db";
+        var storage = PageManager.fromFile(path);
+        // 同一文件只对应一个页存储
+        Assert.assertSame(storage, PageManager.fromFile(path));
+        for (int pageId = 0; pageId < 8; pageId++) {
+            byte[] data = new byte[PageManager.PAGE_SIZE];
+            Arrays.fill(data, (byte) (pageId + 1));
+            var page = storage.get(pageId);
+            try {
+                page.writeData(data);
+            } finally {
+                page.unpin();
+            }
+        }
+        storage.flush();
+        String dumpFile = PageManager.BUFFER_DUMP_FILE;
+        PageManager.BUFFER_DUMP_FILE = FileUtil.TEST_PATH + "buffer.dump";
+        try {
+            PageManager.dumpBuffer();
+            // 以内容相同的新文件替换原文件，相当于重启后缓冲中没有它的页
+            Path copy = Paths.get(path + ".copy");
+            Files.copy(Paths.get(path), copy);
+            Files.move(copy, Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+            Assert.assertTrue(PageManager.loadBufferDump() >= 8);
+            var restarted = (RumPageStorage) PageManager.fromFile(path);
+            Assert.assertNotSame(storage, restarted);
+            var buffer = RumBuffer.getInstance();
+            // 被替换的页存储已关闭，其页不再占用缓冲
+            var replaced = (RumPageStorage) storage;
+            Assert.assertTrue(buffer.pagesOf(replaced).isEmpty());
+            Assert.assertFalse(replaced.getPageFile().getChannel().isOpen());
+            for (int pageId = 0; pageId < 8; pageId++) {
+                for (int i = 0; i < 200 && !buffer.contains(restarted, pageId); i++) {
+                    Thread.sleep(10);
+                }
+                Assert.assertTrue(buffer.contains(restarted, pageId));
+                var page = restarted.get(pageId);
+                try {
+                    Assert.assertEquals(pageId + 1, page.getDataBytes()[0]);
+                } finally {
+                    page.unpin();
+                }
+            }
+        } finally {
+            PageManager.BUFFER_DUMP_FILE = dumpFile;
+        }
+    }
+
+    @Test
+    public void testDirectStorage() throws FileException, PageException {
+        String path = FileUtil.TEST_PATH + "directPageTest.db";
+        // 文件系统不支持直接I/O时退化为普通读写，结果应当一致
+        var storage = PageManager.fromFile(path, PageStorage.Mode.DIRECT);
+        int[] testPage = new int[]{0, 1, 7, 300};
+        for (var pageId : testPage) {
+            byte[] data = new byte[PageManager.PAGE_SIZE];
+            Arrays.fill(data, (byte) (0xF0 | pageId));
+            var page = storage.get(pageId);
+            try {
+                page.patchData(0, data);
+            } finally {
+                page.unpin();
+            }
+        }
+        storage.flush();
+        var tempStorage = new RumPageStorage(path);
+        for (var pageId : testPage) {
+            byte[] data = new byte[PageManager.PAGE_SIZE];
+            Arrays.fill(data, (byte) (0xF0 | pageId));
+            assertArrayEquals(data, tempStorage.get(pageId).getDataBytes());
+        }
+    }
+}
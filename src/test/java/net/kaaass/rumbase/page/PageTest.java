@@ -59,7 +59,6 @@ public class PageTest {
         var storage = PageManager.fromFile(filePath);
         var rand = new Random();
         var page = storage.get(2);
-        page.pin();
         try {
             for (int i = 0; i < 50; i++) {
                 // 随机决定开始、结束
@@ -83,4 +82,37 @@ public class PageTest {
             page.unpin();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTypedAccess() throws FileException, PageException {
+        var storage = PageManager.fromFile(filePath);
+        var page = storage.get(3);
+        try {
+            page.putInt(0, 0x01020304);
+            page.putLong(4, Long.MIN_VALUE + 5);
+            page.putLong(PageManager.PAGE_SIZE - 8, -1L);
+            // 与字节数组的大端序编码一致
+            var bytes = page.getDataBytes();
+            Assert.assertEquals(1, bytes[0]);
+            Assert.assertEquals(4, bytes[3]);
+            Assert.assertEquals((byte) 0x80, bytes[4]);
+            Assert.assertEquals(0x01020304, page.getInt(0));
+            Assert.assertEquals(Long.MIN_VALUE + 5, page.getLong(4));
+            Assert.assertEquals(-1L, page.getLong(PageManager.PAGE_SIZE - 8));
+            // 视图随页的修改而变化
+            var view = page.slice(4, 8);
+            Assert.assertEquals(8, view.remaining());
+            page.patchData(4, new byte[]{0, 0, 0, 0, 0, 0, 0, 7});
+            Assert.assertEquals(7L, view.getLong(0));
+            Assert.assertTrue(view.isReadOnly());
+            // 越界写入
+            try {
+                page.putInt(PageManager.PAGE_SIZE - 2, 1);
+                Assert.fail("should get exception");
+            } catch (PageException ignore) {
+            }
+        } finally {
+            page.unpin();
+        }
+    }
+}
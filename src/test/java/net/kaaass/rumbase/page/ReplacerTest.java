@@ -0,0 +1,146 @@
+package net.kaaass.rumbase.page;
+
+import net.kaaass.rumbase.page.exception.BufferException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 置换策略测试
+ *
+ * @author XuanLaoYee
+ * @see net.kaaass.rumbase.page.Replacer
+ */
+public class ReplacerTest {
+
+    private static RumPage[] preparePages(Replacer replacer, int n) {
+        var pages = new RumPage[n];
+        for (int i = 0; i < n; i++) {
+            pages[i] = new RumPage(ByteBuffer.allocate(PageManager.PAGE_SIZE), i, "", i);
+            replacer.insert(pages[i]);
+        }
+        return pages;
+    }
+
+    @Test
+    public void testClockSkipPinned() throws BufferException {
+        var replacer = new ClockReplacer(4);
+        var pages = preparePages(replacer, 4);
+        pages[0].pin();
+        pages[1].pin();
+        // 被钉住的页不会被换出
+        var victim = replacer.victim();
+        Assert.assertNotSame(pages[0], victim);
+        Assert.assertNotSame(pages[1], victim);
+        Assert.assertEquals(3, replacer.size());
+        pages[0].unpin();
+        pages[1].unpin();
+    }
+
+    @Test
+    public void testClockSecondChance() throws BufferException {
+        var replacer = new ClockReplacer(4);
+        var pages = preparePages(replacer, 4);
+        // 第一次换出会清除所有访问位，选出0号页
+        Assert.assertSame(pages[0], replacer.victim());
+        // 命中1号页后，1号页获得第二次机会
+        replacer.hit(pages[1]);
+        Assert.assertSame(pages[2], replacer.victim());
+        Assert.assertSame(pages[3], replacer.victim());
+        Assert.assertSame(pages[1], replacer.victim());
+        Assert.assertNull(replacer.victim());
+    }
+
+    @Test
+    public void testTwoQueueScanResistant() throws BufferException {
+        var replacer = new TwoQueueReplacer(8);
+        var hot = new RumPage(ByteBuffer.allocate(PageManager.PAGE_SIZE), 0, "hot", 0);
+        replacer.insert(hot);
+        replacer.insert(new RumPage(ByteBuffer.allocate(PageManager.PAGE_SIZE), 1, "scan", 1));
+        replacer.insert(new RumPage(ByteBuffer.allocate(PageManager.PAGE_SIZE), 2, "scan", 2));
+        // 热点页第一次被换出后记入幽灵队列
+        Assert.assertSame(hot, replacer.victim());
+        // 再次装入时进入Am
+        replacer.insert(hot);
+        // 之后的顺序扫描只会换出A1in中的页
+        for (int i = 3; i < 100; i++) {
+            replacer.insert(new RumPage(ByteBuffer.allocate(PageManager.PAGE_SIZE), i, "scan", i % 8));
+            Assert.assertNotSame(hot, replacer.victim());
+        }
+    }
+
+    @Test
+    public void testTwoQueueSkipPinned() throws BufferException {
+        var replacer = new TwoQueueReplacer(4);
+        var pages = preparePages(replacer, 4);
+        pages[0].pin();
+        Assert.assertSame(pages[1], replacer.victim());
+        pages[0].unpin();
+        Assert.assertSame(pages[0], replacer.victim());
+    }
+
+    @Test
+    public void testTwoQueueRestoreVictim() throws BufferException {
+        var replacer = new TwoQueueReplacer(8);
+        var page = new RumPage(ByteBuffer.allocate(PageManager.PAGE_SIZE), 0, "scan", 0);
+        replacer.insert(page);
+        Assert.assertSame(page, replacer.victim());
+        // 换出失败后放回A1in，而不是作为再次装入的页进入Am
+        replacer.restore(page);
+        replacer.insert(new RumPage(ByteBuffer.allocate(PageManager.PAGE_SIZE), 1, "scan", 1));
+        var snapshot = replacer.snapshot();
+        Assert.assertEquals(2, snapshot.size());
+        Assert.assertSame(page, snapshot.get(1));
+        // 幽灵记录已删除，再次换出后重新装入才进入Am
+        Assert.assertSame(page, replacer.victim());
+        replacer.insert(page);
+        Assert.assertSame(page, replacer.snapshot().get(0));
+    }
+
+    @Test
+    public void testClockAllPinned() {
+        var replacer = new ClockReplacer(2);
+        var pages = preparePages(replacer, 2);
+        pages[0].pin();
+        pages[1].pin();
+        try {
+            replacer.victim();
+            Assert.fail("should get exception");
+        } catch (BufferException ignore) {
+        } finally {
+            pages[0].unpin();
+            pages[1].unpin();
+        }
+    }
+
+    @Test
+    public void testClockSnapshot() throws BufferException {
+        var replacer = new ClockReplacer(4);
+        var pages = preparePages(replacer, 4);
+        // 换出0号页并清除其余页的访问位
+        Assert.assertSame(pages[0], replacer.victim());
+        replacer.hit(pages[2]);
+        var snapshot = replacer.snapshot();
+        Assert.assertEquals(3, snapshot.size());
+        // 被访问过的页最热
+        Assert.assertSame(pages[2], snapshot.get(0));
+        Assert.assertFalse(snapshot.contains(pages[0]));
+    }
+
+    @Test
+    public void testTwoQueueSnapshot() throws BufferException {
+        var replacer = new TwoQueueReplacer(8);
+        var hot = new RumPage(ByteBuffer.allocate(PageManager.PAGE_SIZE), 0, "hot", 0);
+        replacer.insert(hot);
+        Assert.assertSame(hot, replacer.victim());
+        replacer.insert(new RumPage(ByteBuffer.allocate(PageManager.PAGE_SIZE), 1, "scan", 1));
+        replacer.insert(hot);
+        replacer.insert(new RumPage(ByteBuffer.allocate(PageManager.PAGE_SIZE), 2, "scan", 2));
+        var snapshot = replacer.snapshot();
+        Assert.assertEquals(3, snapshot.size());
+        // Am中的页在A1in之前
+        Assert.assertSame(hot, snapshot.get(0));
+        Assert.assertEquals(2L, (long) snapshot.get(1).pageId());
+    }
+}
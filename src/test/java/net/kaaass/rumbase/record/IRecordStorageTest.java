@@ -9,6 +9,7 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.UUID;
 
 import static org.junit.Assert.assertArrayEquals;
@@ -59,6 +60,23 @@ public class IRecordStorageTest {
         assertArrayEquals(new byte[]{0x1, 0x2, 0x1f}, result.get());
     }
 
+    @Test
+    public void testInsertAll() throws RecordNotFoundException {
+        var storage = RecordManager.fromFile(PATH + "test_insert_all");
+        var context = TransactionContext.empty();
+
+        var rows = new ArrayList<byte[]>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(new byte[]{(byte) i, (byte) (i >> 8), 0x1f});
+        }
+        var ids = storage.insertAll(context, rows);
+
+        Assert.assertEquals(rows.size(), ids.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertArrayEquals(rows.get(i), storage.query(context, ids.get(i)));
+        }
+    }
+
     @Test
     public void testDelete() throws RecordNotFoundException {
         var storage = RecordManager.fromFile(PATH + "test_delete");
@@ -101,6 +101,28 @@ public class MvccReadCommitTest {
         Assert.assertTrue("tx3 blind a2 after commit", storage.queryOptional(tx3, a2).isEmpty());
     }
 
+    @Test
+    public void testUpdate() throws RecordNotFoundException {
+        var storage = RecordManager.fromFile(PATH + "testUpdate");
+        var manager = new FakeTxManager(TransactionIsolation.READ_COMMITTED);
+        // 事务1更新自己插入的记录，原地更新，记录ID不变
+        var tx1 = manager.begin();
+        var a1 = storage.insert(tx1, new byte[]{0x1, 0x2, 0x3});
+        Assert.assertEquals(a1, storage.update(tx1, a1, new byte[]{0x4, 0x5, 0x6, 0x7, 0x8}));
+        Assert.assertArrayEquals(new byte[]{0x4, 0x5, 0x6, 0x7, 0x8}, storage.query(tx1, a1));
+        tx1.commit();
+        // 事务2更新已提交的记录，需保留旧版本，记录ID改变
+        var tx2 = manager.begin();
+        var tx3 = manager.begin();
+        var a2 = storage.update(tx2, a1, new byte[]{0x9});
+        Assert.assertNotEquals(a1, a2);
+        Assert.assertArrayEquals(new byte[]{0x9}, storage.query(tx2, a2));
+        Assert.assertTrue("tx2 blind a1 after update", storage.queryOptional(tx2, a1).isEmpty());
+        Assert.assertArrayEquals(new byte[]{0x4, 0x5, 0x6, 0x7, 0x8}, storage.query(tx3, a1));
+        tx2.commit();
+        Assert.assertTrue("tx3 blind a1 after commit", storage.queryOptional(tx3, a1).isEmpty());
+    }
+
     @Test
     public void testReadSelfReal() throws RecordNotFoundException, IOException, FileException {
         var storage = RecordManager.fromFile(PATH + "testReadSelfReal");
@@ -253,6 +253,52 @@ public class TableTest {
 
     }
 
+    @Test
+    public void testScanWithoutIndex() {
+
+        var prefix = "testScanWithoutIndex";
+
+        // 创建没有索引的表
+        var context = TransactionContext.empty();
+        var fieldList = new ArrayList<BaseField>();
+        var table = new Table(prefix + "Table", fieldList);
+        fieldList.add(new IntField(prefix + "age", false, table));
+        fieldList.add(new VarcharField(prefix + "name", 20, false, table));
+        table.persist(context);
+
+        try {
+            // 没有索引时仍然可以插入、读取
+            for (int i = 0; i < 5; i++) {
+                var entry = new ArrayList<String>();
+                entry.add(String.valueOf(i));
+                entry.add("'name" + i + "'");
+                table.insert(context, entry);
+            }
+            var rows = table.readAll(context);
+            Assert.assertEquals(5, rows.size());
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(i, (int) rows.get(i).get(0));
+                Assert.assertEquals("name" + i, rows.get(i).get(1));
+            }
+
+            // 按扫描得到的uuid更新、删除
+            rows = table.readAllWithUuid(context);
+            var updated = new ArrayList<Object>();
+            updated.add(10);
+            updated.add("updated");
+            table.updateObjs(context, (long) rows.get(1).get(2), updated);
+            table.delete(context, (long) rows.get(3).get(2));
+
+            rows = table.readAll(context);
+            Assert.assertEquals(4, rows.size());
+            Assert.assertTrue(rows.stream().anyMatch(row -> (int) row.get(0) == 10 && "updated".equals(row.get(1))));
+            Assert.assertTrue(rows.stream().noneMatch(row -> (int) row.get(0) == 1 || (int) row.get(0) == 3));
+        } catch (TableExistenceException | TableConflictException | ArgumentException | RecordNotFoundException e) {
+            log.error("Exception expected: ", e);
+            Assert.fail();
+        }
+    }
+
     void addTestData(TransactionContext context, Table table) throws TableConflictException, TableExistenceException, ArgumentException {
         table.insert(context, new ArrayList<>() {{
             add("1");